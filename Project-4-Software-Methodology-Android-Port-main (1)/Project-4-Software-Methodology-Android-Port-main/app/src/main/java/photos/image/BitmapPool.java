@@ -0,0 +1,209 @@
+package photos.image;
+
+import photos.metrics.Metrics;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Pool of reusable bitmaps under a single byte budget.
+ *
+ * <p>The budget covers both bitmaps in use and bitmaps waiting in the
+ * pool. A decode first asks for a pooled bitmap large enough to decode
+ * into ({@link #acquire}); failing that it reserves room for a new one
+ * ({@link #reserve}), which evicts pooled bitmaps as needed and refuses
+ * if the bitmaps in use alone would exceed the budget, in which case the
+ * caller decodes at a coarser sample size. Bitmaps that are no longer
+ * shown go back to the pool with {@link #release}, so browsing through
+ * any number of photos keeps memory flat.</p>
+ *
+ * <p>Pooled bitmaps are bucketed by capacity: bucket {@code k} holds
+ * bitmaps of {@code 2^k} up to {@code 2^(k+1)} bytes. A request looks in
+ * its own bucket and the one above it, so a small image never takes a
+ * bitmap several times its size.</p>
+ *
+ * <p>The pool knows nothing about the platform bitmap class; it is
+ * generic over the bitmap type and uses an {@link Allocator} to measure
+ * and free them.</p>
+ *
+ * @param <B> the bitmap type
+ * @author Jess
+ * @author Pavel
+ */
+public class BitmapPool<B> {
+
+    /**
+     * Measures and frees bitmaps for a pool.
+     *
+     * @param <B> the bitmap type
+     */
+    public interface Allocator<B> {
+
+        /**
+         * Returns the number of bytes a bitmap can hold.
+         *
+         * @param bitmap the bitmap
+         * @return its allocated size in bytes
+         */
+        long capacityOf(B bitmap);
+
+        /**
+         * Frees a bitmap evicted from the pool.
+         *
+         * @param bitmap the bitmap to free
+         */
+        void recycle(B bitmap);
+    }
+
+    private static final int BUCKETS = 64;
+
+    private final Allocator<B> allocator;
+    private final long limitBytes;
+
+    /** Pooled bitmaps by capacity bucket; most recently released last. */
+    private final ArrayDeque<B>[] buckets;
+
+    private long inUseBytes;
+    private long pooledBytes;
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param allocator measures and frees bitmaps
+     * @param limitBytes the budget for bitmaps in use and pooled together
+     */
+    @SuppressWarnings("unchecked")
+    public BitmapPool(Allocator<B> allocator, long limitBytes) {
+        this.allocator = allocator;
+        this.limitBytes = limitBytes;
+        this.buckets = (ArrayDeque<B>[]) new ArrayDeque<?>[BUCKETS];
+    }
+
+    /**
+     * Takes a pooled bitmap that can hold at least the given number of
+     * bytes. The bitmap counts as in use until it is released.
+     *
+     * @param bytes the size of the image to decode
+     * @return a pooled bitmap, or null if none fits
+     */
+    public synchronized B acquire(long bytes) {
+        int first = bucketOf(bytes);
+        for (int k = first; k <= first + 1 && k < BUCKETS; k++) {
+            ArrayDeque<B> bucket = buckets[k];
+            if (bucket == null) continue;
+
+            Iterator<B> it = bucket.descendingIterator();
+            while (it.hasNext()) {
+                B bitmap = it.next();
+                long capacity = allocator.capacityOf(bitmap);
+                if (capacity >= bytes) {
+                    it.remove();
+                    pooledBytes -= capacity;
+                    inUseBytes += capacity;
+                    Metrics.BITMAPS_REUSED.increment();
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Reserves room for a newly allocated bitmap, evicting pooled bitmaps
+     * if needed. On success the bytes count as in use; follow with
+     * {@link #allocated} once the bitmap exists, or {@link #cancel} if
+     * decoding failed.
+     *
+     * @param bytes the estimated size of the new bitmap
+     * @return false if the bitmaps in use leave no room for it
+     */
+    public synchronized boolean reserve(long bytes) {
+        if (inUseBytes + bytes > limitBytes) return false;
+        evictTo(limitBytes - inUseBytes - bytes);
+        inUseBytes += bytes;
+        return true;
+    }
+
+    /**
+     * Replaces a reservation with the actual size of the bitmap that was
+     * allocated for it.
+     *
+     * @param bitmap the new bitmap
+     * @param reservedBytes the bytes passed to {@link #reserve}
+     */
+    public synchronized void allocated(B bitmap, long reservedBytes) {
+        inUseBytes += allocator.capacityOf(bitmap) - reservedBytes;
+        Metrics.BITMAPS_ALLOCATED.increment();
+    }
+
+    /**
+     * Gives back a reservation that was not used.
+     *
+     * @param reservedBytes the bytes passed to {@link #reserve}
+     */
+    public synchronized void cancel(long reservedBytes) {
+        inUseBytes -= reservedBytes;
+    }
+
+    /**
+     * Returns a bitmap that is no longer shown to the pool. It must not be
+     * drawn again unless it is acquired anew.
+     *
+     * @param bitmap a bitmap obtained from {@link #acquire} or {@link #reserve}
+     */
+    public synchronized void release(B bitmap) {
+        long capacity = allocator.capacityOf(bitmap);
+        inUseBytes -= capacity;
+
+        int k = bucketOf(capacity);
+        if (buckets[k] == null) buckets[k] = new ArrayDeque<>();
+        buckets[k].addLast(bitmap);
+        pooledBytes += capacity;
+        evictTo(limitBytes - inUseBytes);
+    }
+
+    /**
+     * Frees pooled bitmaps until the pool holds at most the given number
+     * of bytes, largest buckets first.
+     *
+     * @param maxPooledBytes the number of pooled bytes to keep
+     */
+    public synchronized void trimTo(long maxPooledBytes) {
+        evictTo(maxPooledBytes);
+    }
+
+    /** Frees every pooled bitmap. Bitmaps in use are not affected. */
+    public synchronized void clear() {
+        evictTo(0);
+    }
+
+    public long getLimitBytes() {
+        return limitBytes;
+    }
+
+    public synchronized long getInUseBytes() {
+        return inUseBytes;
+    }
+
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    private void evictTo(long maxPooledBytes) {
+        // The largest bitmaps free the most memory per recycle, and the
+        // oldest within a bucket are the least likely to be wanted again
+        for (int k = BUCKETS - 1; k >= 0 && pooledBytes > maxPooledBytes; k--) {
+            ArrayDeque<B> bucket = buckets[k];
+            while (bucket != null && !bucket.isEmpty() && pooledBytes > maxPooledBytes) {
+                B bitmap = bucket.pollFirst();
+                pooledBytes -= allocator.capacityOf(bitmap);
+                allocator.recycle(bitmap);
+            }
+        }
+    }
+
+    /** Returns the bucket holding capacities of {@code 2^k} to {@code 2^(k+1)-1}. */
+    private static int bucketOf(long bytes) {
+        return bytes <= 1 ? 0 : 63 - Long.numberOfLeadingZeros(bytes);
+    }
+}
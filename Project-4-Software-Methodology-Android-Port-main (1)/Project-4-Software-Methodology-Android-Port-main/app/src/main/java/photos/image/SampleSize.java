@@ -0,0 +1,74 @@
+package photos.image;
+
+/**
+ * Chooses decoder sample sizes and estimates decoded bitmap sizes.
+ *
+ * <p>Sample sizes are powers of two, as the image decoder rounds other
+ * values down to one anyway. Each image is decoded at the smallest size
+ * that still covers its target view, so a 12 MP camera image shown in a
+ * phone-sized view costs a few megabytes instead of 48.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class SampleSize {
+
+    /** Largest sample size ever used. */
+    public static final int MAX = 64;
+
+    private SampleSize() {}
+
+    /**
+     * Returns the sample size for showing an image scaled to fit inside a
+     * view: the whole image visible, one edge touching the view.
+     *
+     * @param srcWidth image width in pixels
+     * @param srcHeight image height in pixels
+     * @param reqWidth view width in pixels
+     * @param reqHeight view height in pixels
+     * @return a power of two, at least 1
+     */
+    public static int forFit(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        int size = 1;
+        while (size < MAX
+                && (srcWidth / (size * 2) >= reqWidth || srcHeight / (size * 2) >= reqHeight)) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the sample size for showing an image cropped to fill a view:
+     * both edges at least as large as the view.
+     *
+     * @param srcWidth image width in pixels
+     * @param srcHeight image height in pixels
+     * @param reqWidth view width in pixels
+     * @param reqHeight view height in pixels
+     * @return a power of two, at least 1
+     */
+    public static int forFill(int srcWidth, int srcHeight, int reqWidth, int reqHeight) {
+        int size = 1;
+        while (size < MAX
+                && srcWidth / (size * 2) >= reqWidth && srcHeight / (size * 2) >= reqHeight) {
+            size *= 2;
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the byte size of an image decoded with a sample size. The
+     * estimate rounds up, so it never undercounts.
+     *
+     * @param srcWidth image width in pixels
+     * @param srcHeight image height in pixels
+     * @param sampleSize the decoder sample size
+     * @param bytesPerPixel bytes per pixel of the bitmap format
+     * @return the decoded size in bytes
+     */
+    public static long decodedBytes(int srcWidth, int srcHeight, int sampleSize, int bytesPerPixel) {
+        long width = (srcWidth + sampleSize - 1) / sampleSize;
+        long height = (srcHeight + sampleSize - 1) / sampleSize;
+        return width * height * bytesPerPixel;
+    }
+}
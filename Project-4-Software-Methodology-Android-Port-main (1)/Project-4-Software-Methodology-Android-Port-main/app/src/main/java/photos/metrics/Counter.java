@@ -0,0 +1,45 @@
+package photos.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A monotonically increasing, thread-safe count of events or bytes.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class Counter {
+
+    private final String name;
+    private final AtomicLong value = new AtomicLong();
+
+    Counter(String name) {
+        this.name = name;
+    }
+
+    /** Adds one to the counter. */
+    public void increment() {
+        if (Metrics.isEnabled()) value.incrementAndGet();
+    }
+
+    /**
+     * Adds the given amount to the counter.
+     *
+     * @param delta the amount to add
+     */
+    public void add(long delta) {
+        if (Metrics.isEnabled()) value.addAndGet(delta);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    void reset() {
+        value.set(0);
+    }
+}
@@ -0,0 +1,227 @@
+package photos.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Registry of the app's hot-path counters and latency histograms.
+ *
+ * <p>Every metric is a preallocated static field, so instrumented code
+ * only performs a few atomic updates and never allocates:</p>
+ *
+ * <pre>
+ * long start = System.nanoTime();
+ * ...
+ * Metrics.SAVE_ALBUM.recordSince(start);
+ * </pre>
+ *
+ * <p>The current values can be dumped as text or JSON, on demand or
+ * periodically.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class Metrics {
+
+    /** Receives periodic metric dumps. */
+    public interface Sink {
+        void accept(String dump);
+    }
+
+    private static final List<LatencyHistogram> HISTOGRAMS = new ArrayList<>();
+    private static final List<Counter> COUNTERS = new ArrayList<>();
+
+    private static volatile boolean enabled = true;
+    private static ScheduledExecutorService reporter;
+    private static ScheduledFuture<?> reportTask;
+
+    /** Time to load every album file at startup. */
+    public static final LatencyHistogram LOAD_ALL = histogram("datamanager.load_all");
+
+    /** Time to deserialize a single album file. */
+    public static final LatencyHistogram LOAD_ALBUM = histogram("datamanager.load_album");
+
+    /** Time to write a single album file. */
+    public static final LatencyHistogram SAVE_ALBUM = histogram("datamanager.save_album");
+
+    /** Time to copy an imported photo into app storage. */
+    public static final LatencyHistogram IMPORT_PHOTO = histogram("ui.import_photo");
+
+    /** Time to decode a full-screen photo. */
+    public static final LatencyHistogram DECODE_PHOTO = histogram("ui.decode_photo");
+
+    /** Time to decode a grid thumbnail. */
+    public static final LatencyHistogram DECODE_THUMBNAIL = histogram("ui.decode_thumbnail");
+
+    /** Time to run a search over the whole library. */
+    public static final LatencyHistogram SEARCH = histogram("datamanager.search");
+
+    /** Time to update smart albums after a single mutation. */
+    public static final LatencyHistogram SMART_ALBUM_UPDATE = histogram("smartalbums.update");
+
+    /** Time to reconcile the library with changes to photo files. */
+    public static final LatencyHistogram LIBRARY_SYNC = histogram("sync.library_sync");
+
+    /** Album files that could not be read. */
+    public static final Counter LOAD_FAILURES = counter("datamanager.load_failures");
+
+    /** Album files that could not be written. */
+    public static final Counter SAVE_FAILURES = counter("datamanager.save_failures");
+
+    /** Damaged or half-written album files restored at startup. */
+    public static final Counter ALBUMS_RECOVERED = counter("datamanager.albums_recovered");
+
+    /** Bytes written to album files. */
+    public static final Counter BYTES_SAVED = counter("datamanager.bytes_saved");
+
+    /** Image bytes written into library archives. */
+    public static final Counter BYTES_ARCHIVED = counter("archive.bytes_archived");
+
+    /** Image bytes restored from library archives. */
+    public static final Counter BYTES_RESTORED = counter("archive.bytes_restored");
+
+    /** Bytes copied into app storage by photo imports. */
+    public static final Counter BYTES_IMPORTED = counter("ui.bytes_imported");
+
+    /** Photo files whose content was hashed by a library sync. */
+    public static final Counter FILES_HASHED = counter("sync.files_hashed");
+
+    /** Full-screen decodes that reused a pooled bitmap. */
+    public static final Counter BITMAPS_REUSED = counter("image.bitmaps_reused");
+
+    /** Full-screen decodes that allocated a new bitmap. */
+    public static final Counter BITMAPS_ALLOCATED = counter("image.bitmaps_allocated");
+
+    private Metrics() {}
+
+    private static LatencyHistogram histogram(String name) {
+        LatencyHistogram h = new LatencyHistogram(name);
+        HISTOGRAMS.add(h);
+        return h;
+    }
+
+    private static Counter counter(String name) {
+        Counter c = new Counter(name);
+        COUNTERS.add(c);
+        return c;
+    }
+
+    /**
+     * Returns whether metrics are being recorded.
+     *
+     * @return true if recording is enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Turns recording on or off. Values already recorded are kept.
+     *
+     * @param on true to record metrics
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    public static List<LatencyHistogram> getHistograms() {
+        return Collections.unmodifiableList(HISTOGRAMS);
+    }
+
+    public static List<Counter> getCounters() {
+        return Collections.unmodifiableList(COUNTERS);
+    }
+
+    /** Clears every counter and histogram. */
+    public static void reset() {
+        for (LatencyHistogram h : HISTOGRAMS) h.reset();
+        for (Counter c : COUNTERS) c.reset();
+    }
+
+    /**
+     * Returns a human readable dump of all metrics, with latencies in
+     * milliseconds.
+     *
+     * @return the dump, one metric per line
+     */
+    public static String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (LatencyHistogram h : HISTOGRAMS) {
+            sb.append(String.format(Locale.US,
+                    "%s count=%d mean=%.3f p50=%.3f p99=%.3f max=%.3f%n",
+                    h.getName(), h.getCount(),
+                    millis(h.getMean()), millis(h.getPercentile(50)),
+                    millis(h.getPercentile(99)), millis(h.getMax())));
+        }
+        for (Counter c : COUNTERS) {
+            sb.append(c.getName()).append(' ').append(c.get()).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns all metrics as a JSON object, with latencies in nanoseconds.
+     *
+     * @return the JSON dump
+     */
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder("{\"histograms\":{");
+        for (int i = 0; i < HISTOGRAMS.size(); i++) {
+            LatencyHistogram h = HISTOGRAMS.get(i);
+            if (i > 0) sb.append(',');
+            sb.append('"').append(h.getName()).append("\":{")
+                    .append("\"count\":").append(h.getCount())
+                    .append(",\"mean\":").append(h.getMean())
+                    .append(",\"p50\":").append(h.getPercentile(50))
+                    .append(",\"p90\":").append(h.getPercentile(90))
+                    .append(",\"p99\":").append(h.getPercentile(99))
+                    .append(",\"max\":").append(h.getMax())
+                    .append('}');
+        }
+        sb.append("},\"counters\":{");
+        for (int i = 0; i < COUNTERS.size(); i++) {
+            Counter c = COUNTERS.get(i);
+            if (i > 0) sb.append(',');
+            sb.append('"').append(c.getName()).append("\":").append(c.get());
+        }
+        return sb.append("}}").toString();
+    }
+
+    /**
+     * Starts sending a text dump to the sink at a fixed interval,
+     * replacing any previous schedule.
+     *
+     * @param periodSeconds seconds between dumps
+     * @param sink where to send each dump
+     */
+    public static synchronized void startReporting(long periodSeconds, Sink sink) {
+        stopReporting();
+        if (reporter == null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "metrics-reporter");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+        reportTask = reporter.scheduleAtFixedRate(
+                () -> sink.accept(toText()), periodSeconds, periodSeconds, TimeUnit.SECONDS);
+    }
+
+    /** Stops periodic reporting. */
+    public static synchronized void stopReporting() {
+        if (reportTask != null) {
+            reportTask.cancel(false);
+            reportTask = null;
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -3,7 +3,10 @@ package photos.model;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 
 /**
@@ -44,6 +47,22 @@ public class Album implements Serializable {
         return photos;
     }
 
+    /**
+     * Returns a copy of a range of photos in the album.
+     * 
+     * @param offset index of the first photo to return
+     * @param limit maximum number of photos to return
+     * @return the photos in the range, empty if the offset is past the end
+     */
+    public List<Photo> getPhotos(int offset, int limit) {
+        if (offset < 0 || limit < 0) {
+            throw new IllegalArgumentException("Offset and limit must not be negative");
+        }
+        int from = Math.min(offset, photos.size());
+        int to = (int) Math.min((long) from + limit, photos.size());
+        return new ArrayList<>(photos.subList(from, to));
+    }
+
     public int getPhotoCount() {
         return photos.size();
     }
@@ -59,6 +78,7 @@ public class Album implements Serializable {
         if (hasPhoto(photo)) return false;
 
         photos.add(photo);
+        LibraryEvents.photoAdded(this, photo);
         return true;
     }
     
@@ -70,7 +90,112 @@ public class Album implements Serializable {
      */
      public boolean removePhoto(Photo photo) {
         if (photo == null) return false;
-        return photos.remove(photo);
+        int index = photos.indexOf(photo);
+        if (index < 0) return false;
+
+        // Report the object the album held, which may be a different copy
+        // of the same file than the one passed in
+        LibraryEvents.photoRemoved(this, photos.remove(index));
+        return true;
+    }
+
+    /**
+     * Puts a photo back at a position, e.g. when undoing its removal.
+     * 
+     * @param index the position, clamped to the album size
+     * @param photo the photo to insert
+     * @return true if the photo was inserted, false if it already exists
+     */
+    boolean insertPhoto(int index, Photo photo) {
+        if (photo == null || hasPhoto(photo)) return false;
+        photos.add(Math.max(0, Math.min(index, photos.size())), photo);
+        LibraryEvents.photoAdded(this, photo);
+        return true;
+    }
+
+    /**
+     * Adds every photo that is not already in the album, checking for
+     * duplicates in a single pass over the album.
+     * 
+     * @param toAdd the photos to add
+     * @return the photos that were actually added, in order
+     */
+    public List<Photo> addPhotos(Collection<Photo> toAdd) {
+        Set<String> paths = new HashSet<>();
+        for (Photo p : photos) {
+            paths.add(p.getFilePath());
+        }
+
+        List<Photo> added = new ArrayList<>();
+        for (Photo p : toAdd) {
+            if (p != null && paths.add(p.getFilePath())) {
+                photos.add(p);
+                added.add(p);
+            }
+        }
+        for (Photo p : added) {
+            LibraryEvents.photoAdded(this, p);
+        }
+        return added;
+    }
+
+    /**
+     * Removes every given photo from the album in a single pass.
+     * 
+     * @param toRemove the photos to remove
+     * @return the photos that were actually removed, in album order
+     */
+    public List<Photo> removePhotos(Collection<Photo> toRemove) {
+        Set<String> paths = new HashSet<>();
+        for (Photo p : toRemove) {
+            if (p != null) paths.add(p.getFilePath());
+        }
+
+        List<Photo> removed = new ArrayList<>();
+        List<Photo> kept = new ArrayList<>(photos.size());
+        for (Photo p : photos) {
+            if (paths.contains(p.getFilePath())) {
+                removed.add(p);
+            } else {
+                kept.add(p);
+            }
+        }
+        if (!removed.isEmpty()) {
+            photos.clear();
+            photos.addAll(kept);
+        }
+        for (Photo p : removed) {
+            LibraryEvents.photoRemoved(this, p);
+        }
+        return removed;
+    }
+
+    /**
+     * Replaces the album's contents with the given photos in the given
+     * order, reporting only the photos that actually came or went.
+     * 
+     * @param contents the new contents of the album
+     */
+    void restorePhotos(List<Photo> contents) {
+        Set<String> before = new HashSet<>();
+        for (Photo p : photos) {
+            before.add(p.getFilePath());
+        }
+        Set<String> after = new HashSet<>();
+        for (Photo p : contents) {
+            after.add(p.getFilePath());
+        }
+
+        List<Photo> old = new ArrayList<>(photos);
+        photos.clear();
+        photos.addAll(contents);
+
+        for (Photo p : old) {
+            if (!after.contains(p.getFilePath())) LibraryEvents.photoRemoved(this, p);
+        }
+        for (Photo p : contents) {
+            if (!before.contains(p.getFilePath())) LibraryEvents.photoAdded(this, p);
+        }
     }
 
     public boolean hasPhoto(Photo photo) {
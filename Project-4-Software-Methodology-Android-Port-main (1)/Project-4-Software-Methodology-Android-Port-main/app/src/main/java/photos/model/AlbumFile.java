@@ -0,0 +1,415 @@
+package photos.model;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Reads and writes album files in a crash-safe, checksummed format.
+ *
+ * <p>A file starts with a magic number, format version and record count,
+ * followed by records of the form {@code [length][crc32c][payload]}. The
+ * first record holds the album name and each further record one photo:</p>
+ * <pre>
+ * [path][caption][date:8][tagCount:4]([name][value])*
+ * </pre>
+ * <p>An album is written to {@code <name>.dat.tmp}, forced to disk and
+ * then atomically renamed over {@code <name>.dat}, and the directory is
+ * forced so the rename itself survives a crash. The file it replaces is
+ * kept as {@code <name>.dat.bak}, the last good generation.</p>
+ *
+ * <p>{@link #recover(File)} validates files by streaming their checksums
+ * through a small buffer without decoding anything, and restores damaged
+ * albums from their previous generation. A damaged album without a good
+ * previous generation is still read: each photo has its own checksum, so
+ * only the photos in damaged records are lost. Version 1 files, holding
+ * the whole serialized album in one record, and plain serialized albums
+ * written before either format are still read.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+final class AlbumFile {
+
+    static final String EXTENSION = ".dat";
+    static final String TEMP_SUFFIX = ".tmp";
+    static final String BACKUP_SUFFIX = ".bak";
+
+    private static final int MAGIC = 0x50484131; // "PHA1"
+    private static final short VERSION = 2;
+
+    /** Version whose single record is a serialized album. */
+    private static final short VERSION_SERIALIZED = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4;
+    private static final int RECORD_HEADER_SIZE = 4 + 4;
+
+    /** First two bytes of a plain Java serialization stream. */
+    private static final short LEGACY_MAGIC = (short) 0xACED;
+
+    private static final int VALIDATE_BUFFER_SIZE = 64 * 1024;
+
+    private AlbumFile() {}
+
+    /**
+     * Writes the album durably, keeping the previous file as a backup.
+     *
+     * @param album the album to write
+     * @param file the album's {@code .dat} file
+     * @return the number of bytes written
+     * @throws IOException if the album could not be written
+     */
+    static long write(Album album, File file) throws IOException {
+        List<Photo> photos = album.getPhotos();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        ByteArrayOutputStream payload = new ByteArrayOutputStream();
+        DataOutputStream payloadOut = new DataOutputStream(payload);
+        DataOutputStream recordOut = new DataOutputStream(records);
+        CRC32C crc = new CRC32C();
+
+        recordOut.writeInt(MAGIC);
+        recordOut.writeShort(VERSION);
+        recordOut.writeInt(1 + photos.size());
+
+        payloadOut.writeUTF(album.getName());
+        writeRecord(recordOut, payload, crc);
+        for (Photo p : photos) {
+            payload.reset();
+            writePhoto(payloadOut, p);
+            writeRecord(recordOut, payload, crc);
+        }
+
+        File temp = new File(file.getPath() + TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer body = ByteBuffer.wrap(records.toByteArray());
+            while (body.hasRemaining()) channel.write(body);
+            channel.force(true);
+        }
+
+        if (file.exists()) {
+            move(file, new File(file.getPath() + BACKUP_SUFFIX));
+        }
+        move(temp, file);
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+
+        return records.size();
+    }
+
+    /**
+     * Reads an album, verifying its checksums.
+     *
+     * @param file the album's {@code .dat} file
+     * @return the album
+     * @throws IOException if the file is damaged or cannot be read
+     */
+    static Album read(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+
+        if (bytes.length >= 2 && buf.getShort(0) == LEGACY_MAGIC) {
+            return deserialize(bytes, 0, bytes.length);
+        }
+
+        if (bytes.length < HEADER_SIZE || buf.getInt() != MAGIC) {
+            throw new IOException("Not an album file: " + file.getName());
+        }
+        short version = buf.getShort();
+        if (version == VERSION_SERIALIZED) return readSerialized(file, bytes, buf);
+        if (version != VERSION) {
+            throw new IOException("Unsupported album file version " + version + ": " + file.getName());
+        }
+
+        int records = buf.getInt();
+        Album album = null;
+        List<Photo> photos = new ArrayList<>(Math.max(0, records - 1));
+        int damaged = 0;
+        CRC32C crc = new CRC32C();
+
+        for (int i = 0; i < records; i++) {
+            if (buf.remaining() < RECORD_HEADER_SIZE) {
+                damaged += records - i;
+                break;
+            }
+            int length = buf.getInt();
+            int expected = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                // Without a trustworthy length the following records cannot be found
+                damaged += records - i;
+                break;
+            }
+
+            int start = buf.position();
+            buf.position(start + length);
+            crc.reset();
+            crc.update(bytes, start, length);
+            boolean intact = (int) crc.getValue() == expected;
+
+            if (i == 0) {
+                if (!intact) throw new IOException("Checksum mismatch in album file: " + file.getName());
+                album = new Album(readName(bytes, start, length));
+            } else if (intact) {
+                photos.add(readPhoto(bytes, start, length));
+            } else {
+                damaged++;
+            }
+        }
+
+        if (album == null) {
+            throw new IOException("Empty album file: " + file.getName());
+        }
+        if (damaged > 0) {
+            System.err.println("ERROR READING ALBUM: skipped " + damaged
+                    + " damaged photo records in " + file.getName());
+        }
+        album.getPhotos().addAll(photos);
+        return album;
+    }
+
+    /** Reads a version 1 file, whose checksummed records are serialized albums. */
+    private static Album readSerialized(File file, byte[] bytes, ByteBuffer buf) throws IOException {
+        int records = buf.getInt();
+        Album album = null;
+        for (int i = 0; i < records; i++) {
+            if (buf.remaining() < RECORD_HEADER_SIZE) {
+                throw new IOException("Truncated album file: " + file.getName());
+            }
+            int length = buf.getInt();
+            int expected = buf.getInt();
+            if (length < 0 || length > buf.remaining()) {
+                throw new IOException("Truncated album file: " + file.getName());
+            }
+
+            CRC32C crc = new CRC32C();
+            crc.update(bytes, buf.position(), length);
+            if ((int) crc.getValue() != expected) {
+                throw new IOException("Checksum mismatch in album file: " + file.getName());
+            }
+
+            album = deserialize(bytes, buf.position(), length);
+            buf.position(buf.position() + length);
+        }
+
+        if (album == null) {
+            throw new IOException("Empty album file: " + file.getName());
+        }
+        return album;
+    }
+
+    /**
+     * Checks an album file's structure and checksums without
+     * deserializing it. Legacy files are accepted if they start with a
+     * serialization header.
+     *
+     * @param file the file to check
+     * @return true if the file is intact
+     */
+    static boolean isValid(File file) {
+        if (!file.isFile()) return false;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+
+            if (header.remaining() >= 2 && header.getShort(0) == LEGACY_MAGIC) return true;
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC) return false;
+            short version = header.getShort();
+            if (version != VERSION && version != VERSION_SERIALIZED) return false;
+
+            int records = header.getInt();
+            long position = HEADER_SIZE;
+            ByteBuffer recordHeader = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            ByteBuffer chunk = ByteBuffer.allocateDirect(VALIDATE_BUFFER_SIZE);
+            CRC32C crc = new CRC32C();
+
+            for (int i = 0; i < records; i++) {
+                recordHeader.clear();
+                if (readFully(channel, recordHeader, position) < RECORD_HEADER_SIZE) return false;
+                recordHeader.flip();
+                int length = recordHeader.getInt();
+                int expected = recordHeader.getInt();
+                position += RECORD_HEADER_SIZE;
+                if (length < 0 || position + length > size) return false;
+
+                crc.reset();
+                long end = position + length;
+                while (position < end) {
+                    chunk.clear();
+                    chunk.limit((int) Math.min(chunk.capacity(), end - position));
+                    int read = readFully(channel, chunk, position);
+                    if (read <= 0) return false;
+                    chunk.flip();
+                    crc.update(chunk);
+                    position += read;
+                }
+                if ((int) crc.getValue() != expected) return false;
+            }
+            return position == size;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Repairs the album files in a directory after an unclean shutdown.
+     * Interrupted writes are completed or discarded, and damaged albums
+     * are replaced by their last good generation.
+     *
+     * @param dir the album directory
+     * @return the number of albums that were restored
+     */
+    static int recover(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) return 0;
+
+        int restored = 0;
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(EXTENSION + TEMP_SUFFIX)) {
+                File target = new File(dir, name.substring(0, name.length() - TEMP_SUFFIX.length()));
+                // A crash between the two renames leaves a complete temp file
+                // and no album file; anything else is an unfinished write
+                if (!target.exists() && isValid(f) && tryMove(f, target)) {
+                    restored++;
+                } else {
+                    f.delete();
+                }
+            }
+        }
+
+        files = dir.listFiles();
+        if (files == null) return restored;
+
+        for (File f : files) {
+            String name = f.getName();
+            if (name.endsWith(EXTENSION)) {
+                if (isValid(f)) continue;
+                File backup = new File(f.getPath() + BACKUP_SUFFIX);
+                if (isValid(backup) && tryMove(backup, f)) restored++;
+            } else if (name.endsWith(EXTENSION + BACKUP_SUFFIX)) {
+                File target = new File(dir, name.substring(0, name.length() - BACKUP_SUFFIX.length()));
+                if (!target.exists() && isValid(f) && tryMove(f, target)) restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Deletes an album file together with its backup and any temp file.
+     *
+     * @param file the album's {@code .dat} file
+     */
+    static void delete(File file) {
+        file.delete();
+        new File(file.getPath() + BACKUP_SUFFIX).delete();
+        new File(file.getPath() + TEMP_SUFFIX).delete();
+    }
+
+    /** Appends the payload as one {@code [length][crc32c][payload]} record. */
+    private static void writeRecord(DataOutputStream out, ByteArrayOutputStream payload, CRC32C crc)
+            throws IOException {
+        byte[] bytes = payload.toByteArray();
+        crc.reset();
+        crc.update(bytes, 0, bytes.length);
+        out.writeInt(bytes.length);
+        out.writeInt((int) crc.getValue());
+        out.write(bytes);
+    }
+
+    private static void writePhoto(DataOutputStream out, Photo photo) throws IOException {
+        out.writeUTF(photo.getFilePath());
+        out.writeUTF(photo.getCaption());
+        out.writeLong(photo.getDate().getTimeInMillis());
+        out.writeInt(photo.getTags().size());
+        for (Tag t : photo.getTags()) {
+            out.writeUTF(t.getName());
+            out.writeUTF(t.getValue());
+        }
+    }
+
+    private static String readName(byte[] bytes, int offset, int length) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            return in.readUTF();
+        }
+    }
+
+    private static Photo readPhoto(byte[] bytes, int offset, int length) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+            String path = in.readUTF();
+            String caption = in.readUTF();
+            long date = in.readLong();
+            int tagCount = in.readInt();
+            if (tagCount < 0) throw new IOException("Malformed photo record");
+            List<Tag> tags = new ArrayList<>(tagCount);
+            for (int t = 0; t < tagCount; t++) {
+                tags.add(new Tag(in.readUTF(), in.readUTF()));
+            }
+            return new Photo(path, caption, date, tags);
+        }
+    }
+
+    private static Album deserialize(byte[] bytes, int offset, int length) throws IOException {
+        try (ObjectInputStream ois = new ObjectInputStream(
+                new ByteArrayInputStream(bytes, offset, length))) {
+            return (Album) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not an album: " + e.getMessage(), e);
+        }
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        int total = 0;
+        while (buf.hasRemaining()) {
+            int read = channel.read(buf, position + total);
+            if (read < 0) break;
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Forces a directory's entries, e.g. a rename into it, to disk. Not
+     * every platform can open a directory; the rename stands either way.
+     */
+    private static void syncDirectory(File dir) {
+        if (dir == null) return;
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Best effort: some file systems do not support this
+        }
+    }
+
+    static void move(File from, File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static boolean tryMove(File from, File to) {
+        try {
+            move(from, to);
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package photos.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of the displayable state of an album.
+ *
+ * <p>Lists of snapshots are handed to the UI instead of the live, mutable
+ * {@link Album} objects, so a list can be diffed against the previous one
+ * and only the rows that actually changed are rebound.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class AlbumSnapshot {
+
+    private final long id;
+    private final String name;
+    private final int photoCount;
+    private final String dateRange;
+
+    private AlbumSnapshot(Album album) {
+        this.id = StableIds.of(album.getName());
+        this.name = album.getName();
+        this.photoCount = album.getPhotoCount();
+        this.dateRange = album.getDateRangeString();
+    }
+
+    /**
+     * Captures the current state of an album.
+     *
+     * @param album the album to copy
+     * @return a snapshot of the album
+     */
+    public static AlbumSnapshot of(Album album) {
+        return new AlbumSnapshot(album);
+    }
+
+    /**
+     * Captures the current state of every album in the list.
+     *
+     * @param albums the albums to copy
+     * @return an unmodifiable list of snapshots in the same order
+     */
+    public static List<AlbumSnapshot> listOf(List<Album> albums) {
+        List<AlbumSnapshot> list = new ArrayList<>(albums.size());
+        for (Album a : albums) {
+            list.add(new AlbumSnapshot(a));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getPhotoCount() {
+        return photoCount;
+    }
+
+    public String getDateRange() {
+        return dateRange;
+    }
+
+    /**
+     * Checks if both snapshots describe the same album.
+     *
+     * @param other the snapshot to compare
+     * @return true if both snapshots refer to the same album
+     */
+    public boolean isSameItem(AlbumSnapshot other) {
+        return id == other.id && name.equals(other.name);
+    }
+
+    /**
+     * Checks if both snapshots would be displayed identically.
+     *
+     * @param other the snapshot to compare
+     * @return true if nothing visible differs between the snapshots
+     */
+    public boolean hasSameContents(AlbumSnapshot other) {
+        return photoCount == other.photoCount
+                && name.equals(other.name)
+                && dateRange.equals(other.dateRange);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -1,8 +1,21 @@
 package photos.model;
 
+import photos.metrics.Metrics;
+
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * DataManager handles saving and loading albums and photos.
@@ -20,20 +33,82 @@ public class DataManager {
     /** Directory containing stock photos */
     private static final String STOCK_DIR = "data/";
 
+    /** File holding the saved smart album definitions */
+    private static final String SMART_ALBUMS_FILE = "data/smart_albums.ser";
+
+    /** File holding the columnar index of the library */
+    private static final String COLUMNS_FILE = "data/library_columns.dat";
+
+    /** File holding the size, date and hash of every photo file */
+    private static final String SYNC_MANIFEST_FILE = "data/sync_manifest.dat";
+
+    /** Upper bound on threads used to read album files at startup */
+    private static final int MAX_LOAD_THREADS = 4;
+
     /** Singleton instance */
     private static DataManager instance;
 
-    /** All albums currently loaded in memory */
-    private List<Album> albums;
+    /** All albums currently loaded in memory; filled in by loader threads */
+    private final CopyOnWriteArrayList<Album> albums = new CopyOnWriteArrayList<>();
+
+    /** Completes once every album file has been read */
+    private CompletableFuture<List<Album>> loadFuture;
+
+    /** Listeners of the load in progress; guarded by this */
+    private final List<LoadListener> loadListeners = new ArrayList<>();
+
+    /** Set once the load in progress has reported completion; guarded by this */
+    private boolean loadFinished;
+
+    /** Saved-query albums, kept up to date as photos change */
+    private final SmartAlbums smartAlbums = new SmartAlbums();
+
+    /** Ranked tag values for autocomplete, kept up to date as photos change */
+    private final TagSuggestions tagSuggestions = new TagSuggestions();
+
+    /** Undo history of user edits, doubling as the record of unsaved ones */
+    private final EditLog editLog = new EditLog(EditLog.DEFAULT_CAPACITY);
+
+    /** Reconciles photos with their files; created on first sync, used on the sync thread */
+    private LibrarySync librarySync;
+
+    /** Reports directories changed since the last sync, or null if unavailable */
+    private DirectoryWatcher directoryWatcher;
+
+    /** Checks and hashes photo files, one sync at a time */
+    private final ExecutorService syncExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "library-sync");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /** The sync in progress or last run; guarded by syncLock */
+    private CompletableFuture<LibrarySync.Result> pendingSync;
+    private final Object syncLock = new Object();
+
+    /**
+     * Receives albums as they are read at startup. Callbacks arrive on
+     * loader threads, not the UI thread, except that a listener added
+     * during or after loading is first told about the albums already read
+     * on the thread that added it.
+     */
+    public interface LoadListener {
+        /** Called once for each album as soon as it has been read */
+        void onAlbumLoaded(Album album);
+
+        /** Called once after every album file has been read, or loading failed */
+        void onLoadComplete(List<Album> albums);
+    }
 
-    /** Private constructor for singleton */
+    /** Private constructor for singleton; albums are loaded by {@link #loadAsync} */
     private DataManager() {
         ensureDirectoryExists(DATA_DIR);
-        albums = loadAllAlbums();
+        LibraryEvents.addListener(smartAlbums);
+        LibraryEvents.addListener(tagSuggestions);
     }
 
     /** Get singleton instance */
-    public static DataManager getInstance() {
+    public static synchronized DataManager getInstance() {
         if (instance == null) {
             instance = new DataManager();
         }
@@ -46,21 +121,159 @@ public class DataManager {
         return new ArrayList<>(albums);
     }
 
+    /** Get an immutable snapshot of all albums for display */
+    public List<AlbumSnapshot> getAlbumSnapshots() {
+        return AlbumSnapshot.listOf(albums);
+    }
+
+    /** Find every distinct photo in the library matching a query */
+    public List<Photo> search(PhotoQuery query) {
+        long start = System.nanoTime();
+        Set<String> seen = new HashSet<>();
+        List<Photo> result = new ArrayList<>();
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                if (seen.add(p.getFilePath()) && query.matches(p)) result.add(p);
+            }
+        }
+        Metrics.SEARCH.recordSince(start);
+        return result;
+    }
+
+    /** Get the saved-query albums */
+    public SmartAlbums getSmartAlbums() {
+        return smartAlbums;
+    }
+
+    /** Get the undo history; edits made through it are saved by {@link #saveEdits} */
+    public EditLog getEditLog() {
+        return editLog;
+    }
+
+    /** Save only the albums changed by edits since the last save */
+    public void saveEdits() {
+        // Hold the log so no edit slips in between collecting and marking
+        synchronized (editLog) {
+            saveAlbums(editLog.unsavedAlbums(getAlbums()));
+            editLog.markSaved();
+        }
+    }
+
+    /** Get the tag value suggestions for autocomplete */
+    public TagSuggestions getTagSuggestions() {
+        return tagSuggestions;
+    }
+
+    /** Save the smart album definitions */
+    public void saveSmartAlbums() {
+        try {
+            smartAlbums.save(new File(SMART_ALBUMS_FILE));
+        } catch (IOException e) {
+            System.err.println("ERROR SAVING SMART ALBUMS: " + e.getMessage());
+        }
+    }
+
+    /** Export every album and image to a single archive, resuming an interrupted export */
+    public int exportLibrary(File archive) throws IOException {
+        return LibraryArchive.export(getAlbums(), archive);
+    }
+
+    /**
+     * Import an archive, restoring its images into blobDir. Albums that
+     * already exist receive the archive's photos; others are created.
+     */
+    public void importLibrary(File archive, File blobDir) throws IOException {
+        List<Album> imported = LibraryArchive.read(archive, blobDir);
+        PhotoBatch batch = newBatch();
+        for (Album a : imported) {
+            Album existing = getAlbumByName(a.getName());
+            if (existing != null) {
+                batch.copy(a.getPhotos(), existing);
+            } else {
+                batch.createAlbum(a.getName(), a.getPhotos());
+            }
+        }
+        batch.commit();
+    }
+
+    /** Build a columnar snapshot of the library for aggregate queries */
+    public LibraryColumns buildLibraryColumns() {
+        return LibraryColumns.build(getAlbums());
+    }
+
+    /**
+     * Get the columnar index of the library, read from its file if no
+     * album file was saved, added or deleted since it was written,
+     * otherwise rebuilt from the loaded albums and written for next time.
+     */
+    public LibraryColumns getLibraryColumns() {
+        File file = new File(COLUMNS_FILE);
+        File[] albumFiles = new File(DATA_DIR).listFiles((d, n) -> n.endsWith(AlbumFile.EXTENSION));
+        if (file.isFile() && albumFiles != null && file.lastModified() > newest(albumFiles)) {
+            try {
+                LibraryColumns columns = LibraryColumns.read(file);
+                if (columns.getAlbumCount() == albumFiles.length) return columns;
+            } catch (IOException e) {
+                System.err.println("ERROR READING LIBRARY COLUMNS: " + e.getMessage());
+            }
+        }
+
+        awaitLoaded();
+        LibraryColumns columns = buildLibraryColumns();
+        try {
+            columns.write(file);
+        } catch (IOException e) {
+            System.err.println("ERROR SAVING LIBRARY COLUMNS: " + e.getMessage());
+        }
+        return columns;
+    }
+
+    /** Modification time of the most recently modified file */
+    private static long newest(File[] files) {
+        long newest = 0;
+        for (File f : files) {
+            newest = Math.max(newest, f.lastModified());
+        }
+        return newest;
+    }
+
     /** Add an album */
     public void addAlbum(Album album) {
         albums.add(album);
         saveAlbum(album);
     }
 
+    /** Start a batch of bulk operations that is saved in one pass */
+    public PhotoBatch newBatch() {
+        return new PhotoBatch(this);
+    }
+
+    /** Add an album to memory without saving it; used by batches */
+    void attachAlbum(Album album) {
+        albums.add(album);
+    }
+
+    /** Remove an album from memory without touching its file; used by batches */
+    void detachAlbum(Album album) {
+        albums.remove(album);
+    }
+
+    /** Delete an album's file without touching memory; used by batches */
+    void deleteAlbumFile(Album album) {
+        AlbumFile.delete(new File(DATA_DIR + album.getName() + AlbumFile.EXTENSION));
+    }
+
     /** Remove an album */
     public void deleteAlbum(Album album) {
-        albums.remove(album);
-        File file = new File(DATA_DIR + album.getName() + ".dat");
-        if (file.exists()) file.delete();
+        if (albums.remove(album)) LibraryEvents.albumRemoved(album);
+        // Edits in a deleted album can no longer be undone sensibly
+        editLog.removeAlbum(album);
+        AlbumFile.delete(new File(DATA_DIR + album.getName() + AlbumFile.EXTENSION));
     }
 
     /** Create a stock album if not present */
     public void initializeStock() {
+        awaitLoaded();
         if (getAlbumByName("stock") != null) return;
 
         Album stock = new Album("stock");
@@ -94,42 +307,332 @@ public class DataManager {
         return null;
     }
 
-    /** Save a single album */
+    /** Save a single album; the previous version survives a crash mid-write */
     public void saveAlbum(Album album) {
+        try {
+            writeAlbum(album);
+        } catch (IOException e) {
+            System.err.println("ERROR SAVING ALBUM: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Save a single album, reporting failure to the caller; the previous
+     * version survives a crash mid-write
+     */
+    void writeAlbum(Album album) throws IOException {
         ensureDirectoryExists(DATA_DIR);
-        File file = new File(DATA_DIR + album.getName() + ".dat");
+        File file = new File(DATA_DIR + album.getName() + AlbumFile.EXTENSION);
+        long start = System.nanoTime();
 
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-            oos.writeObject(album);
+        try {
+            long written = AlbumFile.write(album, file);
+            Metrics.SAVE_ALBUM.recordSince(start);
+            Metrics.BYTES_SAVED.add(written);
         } catch (IOException e) {
-            System.err.println("ERROR SAVING ALBUM: " + e.getMessage());
+            Metrics.SAVE_FAILURES.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Start loading all album files in the background, if not already
+     * started. Files are read in parallel and each album becomes visible
+     * as soon as it is read. Every listener hears about every album
+     * exactly once, however late it is added.
+     *
+     * @param listener notified of progress, or null
+     * @return a future completed with all albums once loading finishes,
+     *         or completed exceptionally if loading failed
+     */
+    public CompletableFuture<List<Album>> loadAsync(LoadListener listener) {
+        CompletableFuture<List<Album>> future;
+        List<Album> loaded;
+        boolean finished;
+        synchronized (this) {
+            if (loadFuture == null) {
+                CompletableFuture<List<Album>> started = new CompletableFuture<>();
+                loadFuture = started;
+                loadFinished = false;
+                Thread loader = new Thread(() -> loadAllAlbums(started), "album-loader");
+                loader.setDaemon(true);
+                loader.start();
+            }
+            future = loadFuture;
+            if (listener == null) return future;
+
+            // Albums read from now on are reported by the loader threads
+            finished = loadFinished;
+            if (!finished) loadListeners.add(listener);
+            loaded = getAlbums();
+        }
+
+        for (Album a : loaded) listener.onAlbumLoaded(a);
+        if (finished) listener.onLoadComplete(loaded);
+        return future;
+    }
+
+    /**
+     * Stop notifying a listener, e.g. when the screen that added it is
+     * destroyed. Loading carries on.
+     *
+     * @param listener the listener passed to {@link #loadAsync}
+     */
+    public synchronized void removeLoadListener(LoadListener listener) {
+        loadListeners.remove(listener);
+    }
+
+    /**
+     * Discard the albums in memory and read every album file again, after
+     * any load in progress has finished. Unsaved changes are lost.
+     *
+     * @param listener notified of progress, or null
+     * @return a future completed with all albums once loading finishes
+     */
+    public CompletableFuture<List<Album>> reloadAsync(LoadListener listener) {
+        awaitLoaded();
+        synchronized (this) {
+            albums.clear();
+            loadFuture = null;
         }
+        return loadAsync(listener);
     }
 
-    /** Load all album files into memory */
-    private List<Album> loadAllAlbums() {
-        List<Album> list = new ArrayList<>();
-        File[] files = new File(DATA_DIR).listFiles((d, n) -> n.endsWith(".dat"));
+    /** Check whether every album file has been read */
+    public synchronized boolean isLoaded() {
+        return loadFuture != null && loadFuture.isDone();
+    }
 
-        if (files == null) return list;
+    /** Block until all album files have been loaded, starting the load if needed */
+    public void awaitLoaded() {
+        try {
+            loadAsync(null).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            System.err.println("ERROR LOADING ALBUMS: " + e.getCause());
+        }
+    }
 
-        for (File file : files) {
-            try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                Album a = (Album) ois.readObject();
-                list.add(a);
-            } catch (IOException | ClassNotFoundException ignored) {}
+    /** Repair interrupted writes, then read all album files on a bounded pool */
+    private void loadAllAlbums(CompletableFuture<List<Album>> future) {
+        long loadStart = System.nanoTime();
+        try {
+            Metrics.ALBUMS_RECOVERED.add(AlbumFile.recover(new File(DATA_DIR)));
+
+            File[] files = new File(DATA_DIR).listFiles((d, n) -> n.endsWith(AlbumFile.EXTENSION));
+            if (files == null || files.length == 0) {
+                finishLoad(future, loadStart);
+                return;
+            }
+
+            int threads = Math.min(files.length,
+                    Math.min(MAX_LOAD_THREADS, Runtime.getRuntime().availableProcessors()));
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            AtomicInteger remaining = new AtomicInteger(files.length);
+
+            for (File file : files) {
+                pool.execute(() -> {
+                    try {
+                        Album album = loadAlbum(file);
+                        if (album != null) albumLoaded(album);
+                    } catch (RuntimeException e) {
+                        // One unreadable album must not stop the others
+                        Metrics.LOAD_FAILURES.increment();
+                        System.err.println("ERROR LOADING ALBUM: " + e);
+                    } finally {
+                        if (remaining.decrementAndGet() == 0) {
+                            pool.shutdown();
+                            finishLoad(future, loadStart);
+                        }
+                    }
+                });
+            }
+        } catch (RuntimeException | Error e) {
+            System.err.println("ERROR LOADING ALBUMS: " + e);
+            completeLoad(future, getAlbums(), e);
         }
+    }
 
-        return list;
+    /** Read one album file, returning null if it cannot be read */
+    private Album loadAlbum(File file) {
+        long start = System.nanoTime();
+        try {
+            Album album = AlbumFile.read(file);
+            Metrics.LOAD_ALBUM.recordSince(start);
+            return album;
+        } catch (IOException e) {
+            Metrics.LOAD_FAILURES.increment();
+            System.err.println("ERROR LOADING ALBUM: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Make a freshly read album visible and report it to the current listeners */
+    private void albumLoaded(Album album) {
+        List<LoadListener> targets;
+        synchronized (this) {
+            // An album created while loading is newer than its file
+            if (!albums.addIfAbsent(album)) return;
+            targets = new ArrayList<>(loadListeners);
+        }
+        for (LoadListener l : targets) {
+            l.onAlbumLoaded(album);
+        }
+    }
+
+    private void finishLoad(CompletableFuture<List<Album>> future, long loadStart) {
+        List<Album> loaded = getAlbums();
+        Throwable failure = null;
+        try {
+            try {
+                smartAlbums.load(new File(SMART_ALBUMS_FILE));
+            } catch (IOException e) {
+                System.err.println("ERROR LOADING SMART ALBUMS: " + e.getMessage());
+            }
+            smartAlbums.rebuild(loaded);
+            tagSuggestions.rebuild(loaded);
+            Metrics.LOAD_ALL.recordSince(loadStart);
+        } catch (RuntimeException | Error e) {
+            System.err.println("ERROR INDEXING ALBUMS: " + e);
+            failure = e;
+        }
+        completeLoad(future, loaded, failure);
+    }
+
+    /**
+     * Report the end of a load to its listeners and complete its future,
+     * exceptionally if it failed, so no caller waits forever.
+     */
+    private void completeLoad(CompletableFuture<List<Album>> future, List<Album> loaded,
+                              Throwable failure) {
+        List<LoadListener> targets;
+        synchronized (this) {
+            if (future != loadFuture || loadFinished) {
+                targets = new ArrayList<>();
+            } else {
+                loadFinished = true;
+                targets = new ArrayList<>(loadListeners);
+                loadListeners.clear();
+            }
+        }
+        for (LoadListener l : targets) {
+            try {
+                l.onLoadComplete(loaded);
+            } catch (RuntimeException e) {
+                System.err.println("ERROR NOTIFYING LOAD LISTENER: " + e);
+            }
+        }
+        if (failure == null) {
+            future.complete(loaded);
+        } else {
+            future.completeExceptionally(failure);
+        }
     }
 
     
 
+    /**
+     * Reconcile photos with changes to their files on disk, in the
+     * background. The first sync checks every file; later ones only check
+     * directories the file watcher saw change. Albums whose photos changed
+     * are saved.
+     *
+     * <p>Files are checked and hashed on a single sync thread that only
+     * sees a copy of the photo paths. The library itself is read and
+     * changed on {@code modelExecutor}, which must be the thread that makes
+     * every other edit, so a sync never races an edit or a save. A call
+     * made while a sync is running gets that sync's result.</p>
+     *
+     * @param modelExecutor runs tasks on the thread that edits the model,
+     *        normally the UI thread
+     * @return a future completed with what changed once it is applied
+     */
+    public CompletableFuture<LibrarySync.Result> syncFilesAsync(Executor modelExecutor) {
+        synchronized (syncLock) {
+            if (pendingSync != null && !pendingSync.isDone()) return pendingSync;
+
+            pendingSync = loadAsync(null)
+                    .thenApplyAsync(loaded -> photoPaths(), modelExecutor)
+                    .thenApplyAsync(this::checkFiles, syncExecutor)
+                    .thenApplyAsync(this::applySync, modelExecutor);
+            return pendingSync;
+        }
+    }
+
+    /** The path of every photo in the library */
+    private Set<String> photoPaths() {
+        Set<String> paths = new HashSet<>();
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                paths.add(p.getFilePath());
+            }
+        }
+        return paths;
+    }
+
+    /** Check files against the manifest; runs on the sync thread and reads no albums */
+    private LibrarySync.Result checkFiles(Set<String> paths) {
+        Collection<File> changedDirs = null;
+        if (librarySync == null) {
+            librarySync = new LibrarySync(new File(SYNC_MANIFEST_FILE));
+            try {
+                directoryWatcher = new DirectoryWatcher();
+            } catch (IOException | UnsupportedOperationException e) {
+                System.err.println("ERROR STARTING FILE WATCHER: " + e.getMessage());
+            }
+        } else if (directoryWatcher != null) {
+            changedDirs = directoryWatcher.pollChangedDirectories();
+        }
+
+        // Watch before checking, so a change made during the check is
+        // reported by the next poll rather than missed for good
+        if (directoryWatcher != null) {
+            Set<File> dirs = new HashSet<>();
+            for (String path : paths) {
+                dirs.add(new File(path).getAbsoluteFile().getParentFile());
+            }
+            directoryWatcher.watch(dirs);
+        }
+        return librarySync.check(paths, changedDirs);
+    }
+
+    /**
+     * Give photos of changed files their new date and save them, then the
+     * manifest; runs on the model thread. The manifest is only advanced
+     * once every album write succeeded, so a failure or crash makes the
+     * next sync find the same changes again.
+     */
+    private LibrarySync.Result applySync(LibrarySync.Result result) {
+        // Same lock as saveEdits, so the two saves never interleave
+        synchronized (editLog) {
+            try {
+                for (Album a : new LinkedHashSet<>(librarySync.apply(result, getAlbums()))) {
+                    writeAlbum(a);
+                }
+                librarySync.save();
+            } catch (IOException e) {
+                System.err.println("ERROR SAVING SYNC: " + e.getMessage());
+                librarySync.discard();
+                throw new UncheckedIOException(e);
+            }
+        }
+        return result;
+    }
+
+    /** Save the given albums, each exactly once */
+    public void saveAlbums(Collection<Album> toSave) {
+        for (Album a : new LinkedHashSet<>(toSave)) {
+            saveAlbum(a);
+        }
+    }
+
     /** Save all albums */
     public void saveAll() {
         for (Album a : albums) {
             saveAlbum(a);
         }
+        editLog.markSaved();
     }
 
 
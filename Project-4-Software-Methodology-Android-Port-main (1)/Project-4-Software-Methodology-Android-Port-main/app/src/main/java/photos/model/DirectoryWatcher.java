@@ -0,0 +1,87 @@
+package photos.model;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects the photo directories in which files were created, deleted or
+ * modified since they were last asked for.
+ *
+ * <p>Events are only drained when {@link #pollChangedDirectories()} is
+ * called, so no thread is spent waiting on them. If the system drops
+ * events, the next poll reports that everything must be checked.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class DirectoryWatcher implements Closeable {
+
+    private final WatchService service;
+    private final Set<Path> watched = new HashSet<>();
+
+    /**
+     * Creates a watcher that watches nothing yet.
+     *
+     * @throws IOException if the platform has no file watching
+     */
+    public DirectoryWatcher() throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+    }
+
+    /**
+     * Starts watching directories. Directories already watched or that do
+     * not exist are skipped.
+     *
+     * @param directories the directories to watch
+     */
+    public synchronized void watch(Collection<File> directories) {
+        for (File dir : directories) {
+            Path path = dir.toPath();
+            if (watched.contains(path) || !dir.isDirectory()) continue;
+            try {
+                path.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                watched.add(path);
+            } catch (IOException e) {
+                System.err.println("ERROR WATCHING DIRECTORY: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns the directories with changes since the last call.
+     *
+     * @return the changed directories, empty if none, or null if events
+     *         were lost and every directory must be checked
+     */
+    public synchronized Set<File> pollChangedDirectories() {
+        Set<File> changed = new HashSet<>();
+        boolean overflow = false;
+
+        WatchKey key;
+        while ((key = service.poll()) != null) {
+            Path dir = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) overflow = true;
+            }
+            changed.add(dir.toFile());
+            if (!key.reset()) watched.remove(dir);
+        }
+        return overflow ? null : changed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
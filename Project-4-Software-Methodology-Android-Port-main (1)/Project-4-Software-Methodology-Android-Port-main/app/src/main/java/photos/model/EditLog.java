@@ -0,0 +1,440 @@
+package photos.model;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Undo history of user edits that also serves as the journal of unsaved
+ * changes.
+ *
+ * <p>Each edit made through the log is applied to the model at once and
+ * recorded as one small, reversible {@link Edit} in a ring buffer of
+ * fixed capacity; when the ring is full the oldest edit can no longer be
+ * undone. Edits write nothing to disk. Instead every record carries the
+ * sequence number of its last apply, undo or redo, and
+ * {@link DataManager#saveEdits()} saves exactly the albums touched by
+ * records newer than the last save. Edits pushed out of the ring, or
+ * discarded from the redo side, before they were saved leave their album
+ * and photo behind in a small set so they are still saved.</p>
+ *
+ * <p>The history is shared by every screen, but screens undo and redo
+ * through the album-scoped methods, which only act when the next edit in
+ * line was made in the screen's album. Undo therefore never changes an
+ * album the user is not looking at, but an edit in one album waits until
+ * the newer edits in other albums are undone there; screens name that
+ * album with {@link #nextUndoAlbum()} and {@link #nextRedoAlbum()}.
+ * Deleting an album removes just its own edits with
+ * {@link #removeAlbum}.</p>
+ *
+ * <p>The log lives in memory only: edits not yet saved by
+ * {@link DataManager#saveEdits()} are lost if the process dies.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class EditLog {
+
+    /** Default number of edits that can be undone. */
+    public static final int DEFAULT_CAPACITY = 100;
+
+    private static final byte ADD_PHOTO = 1;
+    private static final byte REMOVE_PHOTO = 2;
+    private static final byte SET_CAPTION = 3;
+    private static final byte ADD_TAG = 4;
+    private static final byte REMOVE_TAG = 5;
+
+    /** One reversible edit. */
+    private static final class Edit {
+        final byte type;
+        final Album album;
+        final Photo photo;
+
+        /** The tag, or the caption before the edit. */
+        final Object before;
+
+        /** The caption after the edit. */
+        final Object after;
+
+        /** Position the photo or tag was removed from. */
+        final int index;
+
+        /** Sequence number of the last time this edit changed the model. */
+        long touched;
+
+        Edit(byte type, Album album, Photo photo, Object before, Object after, int index) {
+            this.type = type;
+            this.album = album;
+            this.photo = photo;
+            this.before = before;
+            this.after = after;
+            this.index = index;
+        }
+
+        /** True if only the photo changed, so every album holding it is stale. */
+        boolean changesPhoto() {
+            return type == SET_CAPTION || type == ADD_TAG || type == REMOVE_TAG;
+        }
+    }
+
+    private final Edit[] ring;
+
+    /** Ring index of the oldest edit. */
+    private int first;
+
+    /** Number of edits in the ring. */
+    private int size;
+
+    /** Number of edits, from the oldest, currently applied; the rest can be redone. */
+    private int applied;
+
+    private long sequence;
+    private long savedSequence;
+
+    /** Albums and photo paths of unsaved edits no longer in the ring. */
+    private final Set<Album> droppedAlbums = Collections.newSetFromMap(new IdentityHashMap<>());
+    private final Set<String> droppedPaths = new HashSet<>();
+
+    /**
+     * Creates an empty log.
+     *
+     * @param capacity the number of edits that can be undone
+     */
+    public EditLog(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+        this.ring = new Edit[capacity];
+    }
+
+    /**
+     * Adds a photo to an album.
+     *
+     * @param album the album
+     * @param photo the photo to add
+     * @return true if the photo was added, false if it already exists
+     */
+    public synchronized boolean addPhoto(Album album, Photo photo) {
+        if (!album.addPhoto(photo)) return false;
+        record(new Edit(ADD_PHOTO, album, photo, null, null, -1));
+        return true;
+    }
+
+    /**
+     * Removes a photo from an album.
+     *
+     * @param album the album
+     * @param photo the photo to remove
+     * @return true if the photo was removed, false if it was not there
+     */
+    public synchronized boolean removePhoto(Album album, Photo photo) {
+        int index = album.getPhotos().indexOf(photo);
+        if (index < 0 || !album.removePhoto(photo)) return false;
+        record(new Edit(REMOVE_PHOTO, album, photo, null, null, index));
+        return true;
+    }
+
+    /**
+     * Changes a photo's caption.
+     *
+     * @param album the album the photo is being edited in
+     * @param photo the photo
+     * @param caption the new caption
+     */
+    public synchronized void setCaption(Album album, Photo photo, String caption) {
+        String old = photo.getCaption();
+        if (Objects.equals(old, caption)) return;
+        photo.setCaption(caption);
+        record(new Edit(SET_CAPTION, album, photo, old, caption, -1));
+    }
+
+    /**
+     * Adds a tag to a photo.
+     *
+     * @param album the album the photo is being edited in
+     * @param photo the photo
+     * @param tag the tag to add
+     * @return true if the tag was added, false if it already exists
+     */
+    public synchronized boolean addTag(Album album, Photo photo, Tag tag) {
+        if (!photo.addTag(tag)) return false;
+        record(new Edit(ADD_TAG, album, photo, tag, null, -1));
+        return true;
+    }
+
+    /**
+     * Removes a tag from a photo.
+     *
+     * @param album the album the photo is being edited in
+     * @param photo the photo
+     * @param tag the tag to remove
+     * @return true if the tag was removed, false if it was not there
+     */
+    public synchronized boolean removeTag(Album album, Photo photo, Tag tag) {
+        int index = photo.getTags().indexOf(tag);
+        if (index < 0 || !photo.removeTag(tag)) return false;
+        record(new Edit(REMOVE_TAG, album, photo, tag, null, index));
+        return true;
+    }
+
+    public synchronized boolean canUndo() {
+        return applied > 0;
+    }
+
+    public synchronized boolean canRedo() {
+        return applied < size;
+    }
+
+    /**
+     * Checks if the most recent applied edit was made in an album.
+     *
+     * @param album the album
+     * @return true if {@link #undo(Album)} would revert an edit
+     */
+    public synchronized boolean canUndo(Album album) {
+        return applied > 0 && at(applied - 1).album == album;
+    }
+
+    /**
+     * Checks if the most recently undone edit was made in an album.
+     *
+     * @param album the album
+     * @return true if {@link #redo(Album)} would apply an edit
+     */
+    public synchronized boolean canRedo(Album album) {
+        return applied < size && at(applied).album == album;
+    }
+
+    /**
+     * Returns the album of the edit {@link #undo()} would revert.
+     *
+     * @return the album, or null if there is nothing to undo
+     */
+    public synchronized Album nextUndoAlbum() {
+        return applied > 0 ? at(applied - 1).album : null;
+    }
+
+    /**
+     * Returns the album of the edit {@link #redo()} would apply.
+     *
+     * @return the album, or null if there is nothing to redo
+     */
+    public synchronized Album nextRedoAlbum() {
+        return applied < size ? at(applied).album : null;
+    }
+
+    /**
+     * Reverts the most recent applied edit if it was made in an album.
+     *
+     * @param album the album being shown
+     * @return false if the next edit to undo belongs to another album, or
+     *         there is nothing to undo
+     */
+    public synchronized boolean undo(Album album) {
+        return canUndo(album) && undo();
+    }
+
+    /**
+     * Applies the most recently undone edit again if it was made in an
+     * album.
+     *
+     * @param album the album being shown
+     * @return false if the next edit to redo belongs to another album, or
+     *         there is nothing to redo
+     */
+    public synchronized boolean redo(Album album) {
+        return canRedo(album) && redo();
+    }
+
+    /**
+     * Reverts the most recent applied edit.
+     *
+     * @return false if there is nothing to undo
+     */
+    public synchronized boolean undo() {
+        if (applied == 0) return false;
+        Edit e = at(--applied);
+        revert(e);
+        e.touched = ++sequence;
+        return true;
+    }
+
+    /**
+     * Applies the most recently undone edit again.
+     *
+     * @return false if there is nothing to redo
+     */
+    public synchronized boolean redo() {
+        if (applied == size) return false;
+        Edit e = at(applied++);
+        apply(e);
+        e.touched = ++sequence;
+        return true;
+    }
+
+    /**
+     * Forgets the edits made in an album, e.g. once it is deleted. Edits
+     * in other albums stay in order and can still be undone. Unsaved
+     * changes are still reported by {@link #unsavedAlbums}.
+     *
+     * @param album the album whose edits to forget
+     */
+    public synchronized void removeAlbum(Album album) {
+        int kept = 0;
+        int keptApplied = 0;
+        for (int i = 0; i < size; i++) {
+            Edit e = at(i);
+            if (e.album == album) {
+                drop(e);
+                continue;
+            }
+            // Shift kept edits down; the ring index of a kept edit never passes its old one
+            ring[(first + kept) % ring.length] = e;
+            if (i < applied) keptApplied++;
+            kept++;
+        }
+        for (int i = kept; i < size; i++) {
+            ring[(first + i) % ring.length] = null;
+        }
+        size = kept;
+        applied = keptApplied;
+    }
+
+    /**
+     * Forgets every edit, e.g. when the albums they refer to are gone.
+     * Unsaved changes are still reported by {@link #unsavedAlbums}.
+     */
+    public synchronized void clear() {
+        for (int i = 0; i < size; i++) {
+            drop(at(i));
+        }
+        for (int i = 0; i < ring.length; i++) {
+            ring[i] = null;
+        }
+        first = 0;
+        size = 0;
+        applied = 0;
+    }
+
+    /**
+     * Returns the albums in the library whose saved files are behind the
+     * model because of edits made through this log.
+     *
+     * @param library all albums currently in the library
+     * @return the albums to save
+     */
+    synchronized Set<Album> unsavedAlbums(List<Album> library) {
+        Set<Album> result = Collections.newSetFromMap(new IdentityHashMap<>());
+        result.addAll(droppedAlbums);
+        Set<String> paths = new HashSet<>(droppedPaths);
+
+        for (int i = 0; i < size; i++) {
+            Edit e = at(i);
+            if (e.touched <= savedSequence) continue;
+            result.add(e.album);
+            if (e.changesPhoto()) paths.add(e.photo.getFilePath());
+        }
+
+        // A photo shared with other albums is stored in each of their files
+        if (!paths.isEmpty()) {
+            for (Album a : library) {
+                for (Photo p : a.getPhotos()) {
+                    if (paths.contains(p.getFilePath())) {
+                        result.add(a);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // Never recreate the file of an album deleted since the edit
+        Set<Album> current = Collections.newSetFromMap(new IdentityHashMap<>());
+        current.addAll(library);
+        result.retainAll(current);
+        return result;
+    }
+
+    /** Marks every edit so far as saved. */
+    synchronized void markSaved() {
+        savedSequence = sequence;
+        droppedAlbums.clear();
+        droppedPaths.clear();
+    }
+
+    private void record(Edit e) {
+        // A new edit discards everything that could have been redone
+        while (size > applied) {
+            drop(at(size - 1));
+            ring[(first + size - 1) % ring.length] = null;
+            size--;
+        }
+        if (size == ring.length) {
+            drop(ring[first]);
+            ring[first] = null;
+            first = (first + 1) % ring.length;
+            size--;
+            applied--;
+        }
+
+        ring[(first + size) % ring.length] = e;
+        size++;
+        applied++;
+        e.touched = ++sequence;
+    }
+
+    /** Keeps what an unsaved edit touched once the edit itself is gone. */
+    private void drop(Edit e) {
+        if (e.touched <= savedSequence) return;
+        droppedAlbums.add(e.album);
+        if (e.changesPhoto()) droppedPaths.add(e.photo.getFilePath());
+    }
+
+    private Edit at(int i) {
+        return ring[(first + i) % ring.length];
+    }
+
+    private static void apply(Edit e) {
+        switch (e.type) {
+            case ADD_PHOTO:
+                e.album.addPhoto(e.photo);
+                break;
+            case REMOVE_PHOTO:
+                e.album.removePhoto(e.photo);
+                break;
+            case SET_CAPTION:
+                e.photo.setCaption((String) e.after);
+                break;
+            case ADD_TAG:
+                e.photo.addTag((Tag) e.before);
+                break;
+            case REMOVE_TAG:
+                e.photo.removeTag((Tag) e.before);
+                break;
+            default:
+                throw new IllegalStateException("Unknown edit type " + e.type);
+        }
+    }
+
+    private static void revert(Edit e) {
+        switch (e.type) {
+            case ADD_PHOTO:
+                e.album.removePhoto(e.photo);
+                break;
+            case REMOVE_PHOTO:
+                e.album.insertPhoto(e.index, e.photo);
+                break;
+            case SET_CAPTION:
+                e.photo.setCaption((String) e.before);
+                break;
+            case ADD_TAG:
+                e.photo.removeTag((Tag) e.before);
+                break;
+            case REMOVE_TAG:
+                e.photo.insertTag(e.index, (Tag) e.before);
+                break;
+            default:
+                throw new IllegalStateException("Unknown edit type " + e.type);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package photos.model;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The last known size, modification time and content hash of every photo
+ * file, keyed by path.
+ *
+ * <p>Stored as a magic number and format version followed by one
+ * {@code [path][size][mtime][hash]} record per file. The file is written
+ * next to its final name and renamed over it, atomically where the file
+ * system allows, so a crash leaves either the old or the new manifest.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+final class FileManifest {
+
+    private static final int MAGIC = 0x5048534D; // "PHSM"
+    private static final short VERSION = 1;
+
+    /** Size recorded for a file that was missing when last checked. */
+    static final long MISSING = -1;
+
+    /** What was known about one file when it was last checked. */
+    static final class Entry {
+        final long size;
+        final long modified;
+        final long hash;
+
+        Entry(long size, long modified, long hash) {
+            this.size = size;
+            this.modified = modified;
+            this.hash = hash;
+        }
+
+        boolean isMissing() {
+            return size == MISSING;
+        }
+
+        boolean matches(long size, long modified) {
+            return this.size == size && this.modified == modified;
+        }
+    }
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /** True if entries changed since the manifest was read or written. */
+    private boolean dirty;
+
+    Entry get(String path) {
+        return entries.get(path);
+    }
+
+    void put(String path, Entry entry) {
+        entries.put(path, entry);
+        dirty = true;
+    }
+
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Forgets every file not in the given set of paths.
+     *
+     * @param keep the paths still in the library
+     */
+    void retainAll(Set<String> keep) {
+        Iterator<String> it = entries.keySet().iterator();
+        while (it.hasNext()) {
+            if (!keep.contains(it.next())) {
+                it.remove();
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Reads a manifest. A missing or unreadable file gives an empty
+     * manifest, so every file is treated as seen for the first time.
+     *
+     * @param file the manifest file
+     * @return the manifest
+     */
+    static FileManifest read(File file) {
+        FileManifest manifest = new FileManifest();
+        if (!file.exists()) return manifest;
+
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) {
+                throw new IOException("Not a manifest file: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                manifest.entries.put(path, new Entry(in.readLong(), in.readLong(), in.readLong()));
+            }
+        } catch (IOException e) {
+            System.err.println("ERROR READING MANIFEST: " + e.getMessage());
+            manifest.entries.clear();
+        }
+        return manifest;
+    }
+
+    /**
+     * Writes the manifest, replacing the file atomically where supported.
+     *
+     * @param file the manifest file
+     * @throws IOException if the manifest could not be written
+     */
+    void write(File file) throws IOException {
+        File temp = new File(file.getPath() + AlbumFile.TEMP_SUFFIX);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeLong(entry.modified);
+                out.writeLong(entry.hash);
+            }
+        }
+        AlbumFile.move(temp, file);
+        dirty = false;
+    }
+}
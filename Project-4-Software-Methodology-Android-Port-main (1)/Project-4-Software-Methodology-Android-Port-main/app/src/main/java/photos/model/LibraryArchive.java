@@ -0,0 +1,537 @@
+package photos.model;
+
+import photos.metrics.Metrics;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Exports a whole library to a single archive file and imports it back.
+ *
+ * <p>An archive is a header followed by checksummed chunks of the form
+ * {@code [type][length][crc32c][payload]}:</p>
+ * <ul>
+ *   <li>{@code B} blob: the source path, the image bytes and their
+ *       SHA-256. Identical images are stored once: each image is hashed
+ *       as it is written, and its chunk is cut off again if the archive
+ *       already has that hash.</li>
+ *   <li>{@code M} metadata: albums, captions, dates and tags, with each
+ *       photo referring to its blob by hash. Strings are stored as a
+ *       length and UTF-8 bytes, so captions have no size limit; version 1
+ *       archives, whose strings are limited to 64 KB, are still read.</li>
+ *   <li>{@code E} end marker; an archive without one is incomplete.</li>
+ * </ul>
+ *
+ * <p>Images are streamed through one fixed-size buffer over NIO channels,
+ * so memory use does not depend on library size. Images are restored as
+ * their hash followed by the extension of their source path, so viewers
+ * still recognize the file type. An interrupted export
+ * is resumed by validating the blobs already written and continuing after
+ * the last intact one; an interrupted import skips images that were
+ * already restored and still match their hash.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class LibraryArchive {
+
+    private static final int MAGIC = 0x50484c41; // "PHLA"
+    private static final short VERSION = 2;
+
+    /** Version whose metadata strings are modified UTF-8, limited to 64 KB. */
+    private static final short VERSION_MODIFIED_UTF = 1;
+    private static final int FILE_HEADER_SIZE = 4 + 2;
+
+    private static final byte BLOB = 'B';
+    private static final byte META = 'M';
+    private static final byte END = 'E';
+    private static final int CHUNK_HEADER_SIZE = 1 + 8 + 4;
+
+    private static final int HASH_SIZE = 32;
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private LibraryArchive() {}
+
+    /**
+     * Writes the albums and their image files to an archive. If the
+     * archive already holds part of an earlier, interrupted export, the
+     * images in it are kept and only the rest are written.
+     *
+     * @param albums the albums to export
+     * @param archive the archive file
+     * @return the number of images written by this call
+     * @throws IOException if the archive cannot be written
+     */
+    public static int export(List<Album> albums, File archive) throws IOException {
+        Map<String, String> pathToHash = new HashMap<>();
+        Set<String> hashes = new HashSet<>();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        int written = 0;
+
+        try (FileChannel channel = FileChannel.open(archive.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long end = resumePosition(channel, pathToHash, hashes, buffer);
+            channel.truncate(end);
+            channel.position(end);
+
+            for (Album album : albums) {
+                for (Photo photo : album.getPhotos()) {
+                    String path = photo.getFilePath();
+                    if (pathToHash.containsKey(path)) continue;
+
+                    File file = new File(path);
+                    if (!file.isFile()) continue;
+
+                    String hash = writeBlob(channel, path, file, hashes, buffer);
+                    if (hashes.add(hash)) written++;
+                    pathToHash.put(path, hash);
+                }
+            }
+
+            writeChunk(channel, META, encodeMetadata(albums, pathToHash));
+            writeChunk(channel, END, new byte[0]);
+            channel.force(true);
+        }
+        return written;
+    }
+
+    /**
+     * Reads an archive, restoring its images into a directory.
+     * Images already restored by an earlier, interrupted import are not
+     * written again.
+     *
+     * @param archive the archive file
+     * @param blobDir the directory to restore the images into
+     * @return the albums in the archive, referring to the restored images
+     * @throws IOException if the archive is incomplete, damaged or
+     *         cannot be read
+     */
+    public static List<Album> read(File archive, File blobDir) throws IOException {
+        if (!blobDir.isDirectory() && !blobDir.mkdirs()) {
+            throw new IOException("Cannot create " + blobDir);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        Map<String, File> restored = new HashMap<>();
+        byte[] metadata = null;
+        boolean complete = false;
+        short version;
+
+        try (FileChannel channel = FileChannel.open(archive.toPath(), StandardOpenOption.READ)) {
+            version = checkFileHeader(channel);
+            long position = FILE_HEADER_SIZE;
+            long size = channel.size();
+
+            while (position < size && !complete) {
+                ByteBuffer header = readExactly(channel, CHUNK_HEADER_SIZE, position);
+                byte type = header.get();
+                long length = header.getLong();
+                int crc = header.getInt();
+                long payloadStart = position + CHUNK_HEADER_SIZE;
+                if (length < 0 || payloadStart + length > size) {
+                    throw new IOException("Truncated archive");
+                }
+
+                if (type == BLOB) {
+                    restoreBlob(channel, payloadStart, length, crc, blobDir, restored, buffer);
+                } else if (type == META) {
+                    metadata = readPayload(channel, payloadStart, length, crc);
+                } else if (type == END) {
+                    complete = true;
+                } else {
+                    throw new IOException("Unknown chunk type: " + type);
+                }
+                position = payloadStart + length;
+            }
+        }
+
+        if (!complete || metadata == null) {
+            throw new IOException("Archive is incomplete");
+        }
+        return decodeMetadata(metadata, version, restored);
+    }
+
+    /**
+     * Validates what an earlier export left in the file and returns the
+     * position to continue writing from, recording the blobs found.
+     */
+    private static long resumePosition(FileChannel channel, Map<String, String> pathToHash,
+                                       Set<String> hashes, ByteBuffer buffer) throws IOException {
+        long size = channel.size();
+        boolean resumable;
+        try {
+            // Older versions are exported again from the start
+            resumable = checkFileHeader(channel) == VERSION;
+        } catch (IOException e) {
+            resumable = false;
+        }
+        if (!resumable) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).flip();
+            channel.truncate(0);
+            writeFully(channel, header, 0);
+            return FILE_HEADER_SIZE;
+        }
+
+        long position = FILE_HEADER_SIZE;
+        while (position + CHUNK_HEADER_SIZE <= size) {
+            ByteBuffer header = readExactly(channel, CHUNK_HEADER_SIZE, position);
+            byte type = header.get();
+            long length = header.getLong();
+            int crc = header.getInt();
+            long payloadStart = position + CHUNK_HEADER_SIZE;
+
+            // Metadata is rewritten at the end of every export
+            if (type != BLOB || length < 0 || payloadStart + length > size) break;
+
+            CRC32C check = new CRC32C();
+            stream(channel, payloadStart, length, buffer, check, null, null);
+            if ((int) check.getValue() != crc) break;
+
+            int pathLength = readExactly(channel, 4, payloadStart).getInt();
+            String path = new String(readExactly(channel, pathLength, payloadStart + 4).array(),
+                    StandardCharsets.UTF_8);
+            String hash = toHex(readExactly(channel, HASH_SIZE,
+                    payloadStart + length - HASH_SIZE).array());
+            pathToHash.put(path, hash);
+            hashes.add(hash);
+
+            position = payloadStart + length;
+        }
+        return position;
+    }
+
+    /**
+     * Appends one image as a blob chunk and returns its hash. The image
+     * is read once, hashed as it is copied; if an identical image is
+     * already in the archive, the chunk is cut off again, so each
+     * distinct image is stored once.
+     */
+    private static String writeBlob(FileChannel channel, String path, File file,
+                                    Set<String> hashes, ByteBuffer buffer) throws IOException {
+        long start = channel.position();
+        byte[] pathBytes = path.getBytes(StandardCharsets.UTF_8);
+
+        ByteBuffer prefix = ByteBuffer.allocate(4 + pathBytes.length);
+        prefix.putInt(pathBytes.length).put(pathBytes).flip();
+
+        CRC32C crc = new CRC32C();
+        crc.update(prefix.duplicate());
+        MessageDigest sha = sha256();
+
+        writeFully(channel, ByteBuffer.allocate(CHUNK_HEADER_SIZE), start);
+        writeFully(channel, prefix, start + CHUNK_HEADER_SIZE);
+
+        long dataStart = start + CHUNK_HEADER_SIZE + 4 + pathBytes.length;
+        long dataLength = 0;
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            while (true) {
+                buffer.clear();
+                int read = in.read(buffer);
+                if (read < 0) break;
+                buffer.flip();
+                crc.update(buffer);
+                buffer.position(0);
+                sha.update(buffer);
+                buffer.position(0);
+                writeFully(channel, buffer, dataStart + dataLength);
+                dataLength += read;
+            }
+        }
+
+        byte[] digest = sha.digest();
+        String hash = toHex(digest);
+        if (hashes.contains(hash)) {
+            channel.truncate(start);
+            channel.position(start);
+            return hash;
+        }
+
+        crc.update(digest, 0, digest.length);
+        writeFully(channel, ByteBuffer.wrap(digest), dataStart + dataLength);
+
+        long length = 4 + pathBytes.length + dataLength + HASH_SIZE;
+        ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+        header.put(BLOB).putLong(length).putInt((int) crc.getValue()).flip();
+        writeFully(channel, header, start);
+
+        channel.position(start + CHUNK_HEADER_SIZE + length);
+        Metrics.BYTES_ARCHIVED.add(CHUNK_HEADER_SIZE + length);
+        return hash;
+    }
+
+    /** Hashes a whole file through the buffer. */
+    private static byte[] hash(File file, ByteBuffer buffer) throws IOException {
+        MessageDigest sha = sha256();
+        try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer.clear();
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                sha.update(buffer);
+                buffer.clear();
+            }
+        }
+        return sha.digest();
+    }
+
+    /**
+     * Restores one blob chunk into the blob directory, verifying it, and
+     * records the restored file under its hash. A file already at the
+     * target is kept only if its contents match the hash.
+     */
+    private static void restoreBlob(FileChannel channel, long start, long length, int crc,
+                                    File blobDir, Map<String, File> restored, ByteBuffer buffer)
+            throws IOException {
+        int pathLength = readExactly(channel, 4, start).getInt();
+        long dataStart = start + 4 + pathLength;
+        long dataLength = length - 4 - pathLength - HASH_SIZE;
+        if (pathLength < 0 || dataLength < 0) throw new IOException("Malformed blob");
+
+        String path = new String(readExactly(channel, pathLength, start + 4).array(),
+                StandardCharsets.UTF_8);
+        byte[] digest = readExactly(channel, HASH_SIZE, dataStart + dataLength).array();
+        String hash = toHex(digest);
+        File target = new File(blobDir, hash + extension(path));
+        restored.put(hash, target);
+        if (target.isFile() && target.length() == dataLength
+                && MessageDigest.isEqual(digest, hash(target, buffer))) {
+            return;
+        }
+
+        File temp = new File(blobDir, hash + ".part");
+        CRC32C check = new CRC32C();
+        MessageDigest sha = sha256();
+        stream(channel, start, 4 + pathLength, buffer, check, null, null);
+        try (FileChannel out = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            stream(channel, dataStart, dataLength, buffer, check, sha, out);
+            out.force(false);
+        }
+        check.update(digest, 0, digest.length);
+
+        if ((int) check.getValue() != crc || !MessageDigest.isEqual(digest, sha.digest())) {
+            temp.delete();
+            throw new IOException("Checksum mismatch in image " + hash);
+        }
+        Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Metrics.BYTES_RESTORED.add(dataLength);
+    }
+
+    /** Returns the extension of a path including its dot, or "" if it has none. */
+    private static String extension(String path) {
+        String name = new File(path).getName();
+        int dot = name.lastIndexOf('.');
+        if (dot <= 0 || dot == name.length() - 1) return "";
+
+        // Only plain extensions, never anything that changes the directory
+        String ext = name.substring(dot);
+        for (int i = 1; i < ext.length(); i++) {
+            if (!Character.isLetterOrDigit(ext.charAt(i))) return "";
+        }
+        return ext;
+    }
+
+    /**
+     * Streams a range of the archive through the buffer, feeding the
+     * checksums and optionally copying it to another channel.
+     */
+    private static void stream(FileChannel channel, long position, long length, ByteBuffer buffer,
+                               CRC32C crc, MessageDigest sha, FileChannel out) throws IOException {
+        long end = position + length;
+        while (position < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = channel.read(buffer, position);
+            if (read < 0) throw new IOException("Truncated archive");
+            buffer.flip();
+            crc.update(buffer);
+            if (sha != null) {
+                buffer.position(0);
+                sha.update(buffer);
+            }
+            if (out != null) {
+                buffer.position(0);
+                while (buffer.hasRemaining()) out.write(buffer);
+            }
+            position += read;
+        }
+    }
+
+    private static void writeChunk(FileChannel channel, byte type, byte[] payload) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, payload.length);
+
+        ByteBuffer header = ByteBuffer.allocate(CHUNK_HEADER_SIZE);
+        header.put(type).putLong(payload.length).putInt((int) crc.getValue()).flip();
+
+        long position = channel.position();
+        writeFully(channel, header, position);
+        writeFully(channel, ByteBuffer.wrap(payload), position + CHUNK_HEADER_SIZE);
+        channel.position(position + CHUNK_HEADER_SIZE + payload.length);
+    }
+
+    private static byte[] readPayload(FileChannel channel, long position, long length, int crc)
+            throws IOException {
+        if (length > Integer.MAX_VALUE) throw new IOException("Metadata too large");
+        byte[] payload = readExactly(channel, (int) length, position).array();
+
+        CRC32C check = new CRC32C();
+        check.update(payload, 0, payload.length);
+        if ((int) check.getValue() != crc) throw new IOException("Checksum mismatch in metadata");
+        return payload;
+    }
+
+    private static byte[] encodeMetadata(List<Album> albums, Map<String, String> pathToHash)
+            throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(albums.size());
+            for (Album album : albums) {
+                writeString(out, album.getName());
+                out.writeInt(album.getPhotoCount());
+                for (Photo p : album.getPhotos()) {
+                    String hash = pathToHash.get(p.getFilePath());
+                    writeString(out, p.getFilePath());
+                    writeString(out, hash == null ? "" : hash);
+                    writeString(out, p.getCaption());
+                    out.writeLong(p.getDate().getTimeInMillis());
+                    out.writeInt(p.getTags().size());
+                    for (Tag t : p.getTags()) {
+                        writeString(out, t.getName());
+                        writeString(out, t.getValue());
+                    }
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Rebuilds the albums from the metadata chunk. The albums are staging
+     * copies for the caller to merge, so photos are added without library
+     * events.
+     */
+    private static List<Album> decodeMetadata(byte[] metadata, short version,
+                                              Map<String, File> restored) throws IOException {
+        List<Album> albums = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(metadata))) {
+            int albumCount = in.readInt();
+            for (int a = 0; a < albumCount; a++) {
+                Album album = new Album(readString(in, version));
+                int photoCount = in.readInt();
+                List<Photo> photos = new ArrayList<>(photoCount);
+                Set<String> paths = new HashSet<>();
+                for (int i = 0; i < photoCount; i++) {
+                    String originalPath = readString(in, version);
+                    String hash = readString(in, version);
+                    String caption = readString(in, version);
+                    long date = in.readLong();
+                    int tagCount = in.readInt();
+                    List<Tag> tags = new ArrayList<>(tagCount);
+                    for (int t = 0; t < tagCount; t++) {
+                        tags.add(new Tag(readString(in, version), readString(in, version)));
+                    }
+
+                    // Photos whose files were missing at export keep their old path
+                    String path = originalPath;
+                    if (!hash.isEmpty()) {
+                        File blob = restored.get(hash);
+                        if (blob == null) throw new IOException("Missing image " + hash);
+                        path = blob.getAbsolutePath();
+                    }
+
+                    // Identical images from different paths share one file
+                    if (paths.add(path)) {
+                        photos.add(new Photo(path, caption, date, tags));
+                    }
+                }
+                album.getPhotos().addAll(photos);
+                albums.add(album);
+            }
+        }
+        return albums;
+    }
+
+    /** Writes a string as its UTF-8 length followed by the bytes. */
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in, short version) throws IOException {
+        if (version == VERSION_MODIFIED_UTF) return in.readUTF();
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) throw new IOException("Malformed metadata");
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Checks the file header and returns the archive's version. */
+    private static short checkFileHeader(FileChannel channel) throws IOException {
+        if (channel.size() < FILE_HEADER_SIZE) throw new IOException("Not a library archive");
+        ByteBuffer header = readExactly(channel, FILE_HEADER_SIZE, 0);
+        if (header.getInt() != MAGIC) throw new IOException("Not a library archive");
+        short version = header.getShort();
+        if (version != VERSION && version != VERSION_MODIFIED_UTF) {
+            throw new IOException("Not a library archive");
+        }
+        return version;
+    }
+
+    private static ByteBuffer readExactly(FileChannel channel, int length, long position)
+            throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, position + buf.position()) < 0) {
+                throw new IOException("Truncated archive");
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position)
+            throws IOException {
+        long offset = position;
+        while (buf.hasRemaining()) {
+            offset += channel.write(buf, offset);
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,507 @@
+package photos.model;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32C;
+
+/**
+ * Read-only columnar copy of the library for aggregate queries.
+ *
+ * <p>Each photo gets a dense id (0..n-1), deduplicated by file path across
+ * albums. Photo attributes, album membership and tags are then stored as
+ * parallel primitive arrays, and every query is a single tight loop over
+ * one or two of those arrays instead of a walk over the
+ * {@link Album}/{@link Photo}/{@link Tag} object graph.</p>
+ *
+ * <p>The index is a snapshot; rebuild it with {@link #build(List)} after
+ * the library changes. It can be saved to a columnar file with
+ * {@link #write(File)} and read back with {@link #read(File)}, without
+ * loading any albums:</p>
+ * <pre>
+ * [magic:4][version:2][photos:4][albums:4][members:4][tagPairs:4][tags:4]
+ * photoPaths photoDates photoMonths photoTagCounts albumNames
+ * memberPhotos memberAlbums tagPhotos tagCodes tagNames tagValues
+ * [crc32c:4]
+ * </pre>
+ * <p>Each numeric column is stored as one contiguous big-endian array, read
+ * back with a single bulk copy; strings are {@code [length][UTF-8]}. The
+ * checksum covers everything before it.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class LibraryColumns {
+
+    private static final int MAGIC = 0x50484c43; // "PHLC"
+    private static final short VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 2 + 4 * 5;
+
+    /** File path of each photo, indexed by photo id. */
+    private final String[] photoPaths;
+
+    /** Date of each photo in epoch milliseconds, indexed by photo id. */
+    private final long[] photoDates;
+
+    /** Month of each photo as {@code year * 12 + month}, indexed by photo id. */
+    private final int[] photoMonths;
+
+    /** Number of distinct tags on each photo, indexed by photo id. */
+    private final int[] photoTagCounts;
+
+    /** Album names, indexed by album id. */
+    private final String[] albumNames;
+
+    /** Membership pairs: photo {@code memberPhotos[i]} is in album {@code memberAlbums[i]}. */
+    private final int[] memberPhotos;
+    private final int[] memberAlbums;
+
+    /** Tag pairs: photo {@code tagPhotos[i]} has tag code {@code tagCodes[i]}. */
+    private final int[] tagPhotos;
+    private final int[] tagCodes;
+
+    /** Tag dictionary, indexed by tag code. */
+    private final String[] tagNames;
+    private final String[] tagValues;
+
+    private LibraryColumns(String[] photoPaths, long[] photoDates, int[] photoMonths,
+                           int[] photoTagCounts, String[] albumNames,
+                           int[] memberPhotos, int[] memberAlbums,
+                           int[] tagPhotos, int[] tagCodes,
+                           String[] tagNames, String[] tagValues) {
+        this.photoPaths = photoPaths;
+        this.photoDates = photoDates;
+        this.photoMonths = photoMonths;
+        this.photoTagCounts = photoTagCounts;
+        this.albumNames = albumNames;
+        this.memberPhotos = memberPhotos;
+        this.memberAlbums = memberAlbums;
+        this.tagPhotos = tagPhotos;
+        this.tagCodes = tagCodes;
+        this.tagNames = tagNames;
+        this.tagValues = tagValues;
+    }
+
+    /**
+     * Builds a columnar index of the given albums.
+     *
+     * @param albums the albums to index
+     * @return the index
+     */
+    public static LibraryColumns build(List<Album> albums) {
+        Map<String, Integer> photoIds = new HashMap<>();
+        List<String> paths = new ArrayList<>();
+        IntList months = new IntList();
+        LongList millis = new LongList();
+
+        IntList memberPhotos = new IntList();
+        IntList memberAlbums = new IntList();
+        String[] albumNames = new String[albums.size()];
+
+        Map<Tag, Integer> tagIds = new HashMap<>();
+        List<Tag> dictionary = new ArrayList<>();
+        // Tags seen per photo, keyed by photo id and tag code, to merge the
+        // tag lists of the same photo stored in several albums
+        Set<Long> photoTags = new HashSet<>();
+        IntList tagPhotos = new IntList();
+        IntList tagCodes = new IntList();
+
+        Calendar cal = Calendar.getInstance();
+        for (int a = 0; a < albums.size(); a++) {
+            Album album = albums.get(a);
+            albumNames[a] = album.getName();
+
+            for (Photo p : album.getPhotos()) {
+                Integer id = photoIds.get(p.getFilePath());
+                if (id == null) {
+                    id = paths.size();
+                    photoIds.put(p.getFilePath(), id);
+                    paths.add(p.getFilePath());
+
+                    long time = p.getDate().getTimeInMillis();
+                    cal.setTimeInMillis(time);
+                    millis.add(time);
+                    months.add(cal.get(Calendar.YEAR) * 12 + cal.get(Calendar.MONTH));
+                }
+                memberPhotos.add(id);
+                memberAlbums.add(a);
+
+                for (Tag t : p.getTags()) {
+                    Integer code = tagIds.get(t);
+                    if (code == null) {
+                        code = dictionary.size();
+                        Tag copy = new Tag(t.getName(), t.getValue());
+                        tagIds.put(copy, code);
+                        dictionary.add(copy);
+                    }
+                    if (photoTags.add(((long) id << 32) | code)) {
+                        tagPhotos.add(id);
+                        tagCodes.add(code);
+                    }
+                }
+            }
+        }
+
+        int photoCount = paths.size();
+        int[] tagCounts = new int[photoCount];
+        int[] tp = tagPhotos.toArray();
+        for (int photo : tp) {
+            tagCounts[photo]++;
+        }
+
+        String[] names = new String[dictionary.size()];
+        String[] values = new String[dictionary.size()];
+        for (int i = 0; i < dictionary.size(); i++) {
+            names[i] = dictionary.get(i).getName();
+            values[i] = dictionary.get(i).getValue();
+        }
+
+        return new LibraryColumns(
+                paths.toArray(new String[0]), millis.toArray(), months.toArray(),
+                tagCounts, albumNames,
+                memberPhotos.toArray(), memberAlbums.toArray(),
+                tp, tagCodes.toArray(), names, values);
+    }
+
+    /**
+     * Writes the columns to a file, replacing it atomically.
+     *
+     * @param file the columnar file
+     * @throws IOException if the file could not be written
+     */
+    public void write(File file) throws IOException {
+        int size = HEADER_SIZE
+                + stringsSize(photoPaths) + photoDates.length * 8 + photoMonths.length * 4
+                + photoTagCounts.length * 4 + stringsSize(albumNames)
+                + (memberPhotos.length + memberAlbums.length) * 4
+                + (tagPhotos.length + tagCodes.length) * 4
+                + stringsSize(tagNames) + stringsSize(tagValues) + 4;
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(MAGIC).putShort(VERSION)
+                .putInt(photoPaths.length).putInt(albumNames.length)
+                .putInt(memberPhotos.length).putInt(tagPhotos.length).putInt(tagNames.length);
+        putStrings(buf, photoPaths);
+        buf.asLongBuffer().put(photoDates);
+        buf.position(buf.position() + photoDates.length * 8);
+        putInts(buf, photoMonths);
+        putInts(buf, photoTagCounts);
+        putStrings(buf, albumNames);
+        putInts(buf, memberPhotos);
+        putInts(buf, memberAlbums);
+        putInts(buf, tagPhotos);
+        putInts(buf, tagCodes);
+        putStrings(buf, tagNames);
+        putStrings(buf, tagValues);
+
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), 0, buf.position());
+        buf.putInt((int) crc.getValue());
+        buf.flip();
+
+        File temp = new File(file.getPath() + AlbumFile.TEMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buf.hasRemaining()) channel.write(buf);
+            channel.force(true);
+        }
+        AlbumFile.move(temp, file);
+    }
+
+    /**
+     * Reads columns written by {@link #write(File)}.
+     *
+     * @param file the columnar file
+     * @return the columns
+     * @throws IOException if the file is damaged or cannot be read
+     */
+    public static LibraryColumns read(File file) throws IOException {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE + 4 || length > Integer.MAX_VALUE) {
+                throw new IOException("Not a library columns file: " + file.getName());
+            }
+            buf = ByteBuffer.allocate((int) length);
+            while (buf.hasRemaining()) {
+                if (channel.read(buf) < 0) throw new IOException("Truncated columns file: " + file.getName());
+            }
+        }
+
+        CRC32C crc = new CRC32C();
+        crc.update(buf.array(), 0, buf.capacity() - 4);
+        if ((int) crc.getValue() != buf.getInt(buf.capacity() - 4)) {
+            throw new IOException("Checksum mismatch in columns file: " + file.getName());
+        }
+
+        buf.flip();
+        buf.limit(buf.capacity() - 4);
+        if (buf.getInt() != MAGIC || buf.getShort() != VERSION) {
+            throw new IOException("Not a library columns file: " + file.getName());
+        }
+        try {
+            int photos = buf.getInt();
+            int albums = buf.getInt();
+            int members = buf.getInt();
+            int tagPairs = buf.getInt();
+            int tags = buf.getInt();
+
+            String[] paths = getStrings(buf, photos);
+            long[] dates = new long[photos];
+            buf.asLongBuffer().get(dates);
+            buf.position(buf.position() + photos * 8);
+            int[] months = getInts(buf, photos);
+            int[] tagCounts = getInts(buf, photos);
+            String[] albumNames = getStrings(buf, albums);
+            int[] memberPhotos = getInts(buf, members);
+            int[] memberAlbums = getInts(buf, members);
+            int[] tagPhotos = getInts(buf, tagPairs);
+            int[] tagCodes = getInts(buf, tagPairs);
+            String[] names = getStrings(buf, tags);
+            String[] values = getStrings(buf, tags);
+
+            return new LibraryColumns(paths, dates, months, tagCounts, albumNames,
+                    memberPhotos, memberAlbums, tagPhotos, tagCodes, names, values);
+        } catch (RuntimeException e) {
+            // Counts that do not fit the file, despite a matching checksum
+            throw new IOException("Malformed columns file: " + file.getName(), e);
+        }
+    }
+
+    /**
+     * Returns the number of distinct photos in the library.
+     *
+     * @return the photo count
+     */
+    public int getPhotoCount() {
+        return photoPaths.length;
+    }
+
+    /**
+     * Returns the number of albums in the library.
+     *
+     * @return the album count
+     */
+    public int getAlbumCount() {
+        return albumNames.length;
+    }
+
+    /**
+     * Returns the file path of a photo.
+     *
+     * @param photoId the dense photo id
+     * @return the file path
+     */
+    public String getPhotoPath(int photoId) {
+        return photoPaths[photoId];
+    }
+
+    /**
+     * Counts photos per value of the given tag type.
+     *
+     * @param tagName the tag type, e.g. "person"
+     * @return photo counts keyed by tag value, largest first
+     */
+    public Map<String, Integer> countByTagValue(String tagName) {
+        int[] perCode = new int[tagNames.length];
+        for (int i = 0; i < tagCodes.length; i++) {
+            perCode[tagCodes[i]]++;
+        }
+
+        List<Integer> codes = new ArrayList<>();
+        for (int code = 0; code < perCode.length; code++) {
+            if (perCode[code] > 0 && tagNames[code].equals(tagName)) codes.add(code);
+        }
+        codes.sort((x, y) -> Integer.compare(perCode[y], perCode[x]));
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int code : codes) {
+            result.put(tagValues[code], perCode[code]);
+        }
+        return result;
+    }
+
+    /**
+     * Counts photos per calendar month.
+     *
+     * @return photo counts keyed by "YYYY-MM", in chronological order
+     */
+    public Map<String, Integer> countByMonth() {
+        Map<String, Integer> result = new TreeMap<>();
+        if (photoMonths.length == 0) return result;
+
+        int min = Integer.MAX_VALUE;
+        int max = Integer.MIN_VALUE;
+        for (int m : photoMonths) {
+            if (m < min) min = m;
+            if (m > max) max = m;
+        }
+
+        int[] counts = new int[max - min + 1];
+        for (int m : photoMonths) {
+            counts[m - min]++;
+        }
+
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] == 0) continue;
+            int month = min + i;
+            result.put(String.format("%04d-%02d", month / 12, month % 12 + 1), counts[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the albums with the most photos.
+     *
+     * @param limit maximum number of albums to return
+     * @return photo counts keyed by album name, largest first
+     */
+    public Map<String, Integer> largestAlbums(int limit) {
+        int[] counts = new int[albumNames.length];
+        for (int album : memberAlbums) {
+            counts[album]++;
+        }
+
+        Integer[] order = new Integer[counts.length];
+        for (int i = 0; i < order.length; i++) order[i] = i;
+        Arrays.sort(order, (x, y) -> Integer.compare(counts[y], counts[x]));
+
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (int i = 0; i < Math.min(limit, order.length); i++) {
+            result.put(albumNames[order[i]], counts[order[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the ids of photos that have no tags.
+     *
+     * @return the untagged photo ids in ascending order
+     */
+    public int[] untaggedPhotos() {
+        int n = 0;
+        for (int count : photoTagCounts) {
+            if (count == 0) n++;
+        }
+
+        int[] result = new int[n];
+        int j = 0;
+        for (int id = 0; id < photoTagCounts.length; id++) {
+            if (photoTagCounts[id] == 0) result[j++] = id;
+        }
+        return result;
+    }
+
+    /**
+     * Counts photos dated within a range.
+     *
+     * @param fromMillis start of the range, inclusive
+     * @param toMillis end of the range, inclusive
+     * @return the number of photos in the range
+     */
+    public int countInDateRange(long fromMillis, long toMillis) {
+        int n = 0;
+        for (long d : photoDates) {
+            if (d >= fromMillis && d <= toMillis) n++;
+        }
+        return n;
+    }
+
+    /**
+     * Counts photos that belong to more than one album.
+     *
+     * @return the number of shared photos
+     */
+    public int countSharedPhotos() {
+        int[] albumsPerPhoto = new int[photoPaths.length];
+        for (int photo : memberPhotos) {
+            albumsPerPhoto[photo]++;
+        }
+
+        int n = 0;
+        for (int count : albumsPerPhoto) {
+            if (count > 1) n++;
+        }
+        return n;
+    }
+
+    private static int stringsSize(String[] strings) {
+        int size = 0;
+        for (String s : strings) {
+            size += 4 + s.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size;
+    }
+
+    private static void putStrings(ByteBuffer buf, String[] strings) {
+        for (String s : strings) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            buf.putInt(bytes.length).put(bytes);
+        }
+    }
+
+    private static String[] getStrings(ByteBuffer buf, int count) {
+        String[] strings = new String[count];
+        for (int i = 0; i < count; i++) {
+            byte[] bytes = new byte[buf.getInt()];
+            buf.get(bytes);
+            strings[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return strings;
+    }
+
+    private static void putInts(ByteBuffer buf, int[] values) {
+        buf.asIntBuffer().put(values);
+        buf.position(buf.position() + values.length * 4);
+    }
+
+    private static int[] getInts(ByteBuffer buf, int count) {
+        int[] values = new int[count];
+        buf.asIntBuffer().get(values);
+        buf.position(buf.position() + count * 4);
+        return values;
+    }
+
+    /** Growable int array used while building the columns. */
+    private static final class IntList {
+        private int[] data = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /** Growable long array used while building the columns. */
+    private static final class LongList {
+        private long[] data = new long[16];
+        private int size;
+
+        void add(long value) {
+            if (size == data.length) data = Arrays.copyOf(data, size * 2);
+            data[size++] = value;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(data, size);
+        }
+    }
+}
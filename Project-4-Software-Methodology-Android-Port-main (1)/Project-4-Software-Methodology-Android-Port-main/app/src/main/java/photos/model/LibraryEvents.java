@@ -0,0 +1,68 @@
+package photos.model;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Dispatches model changes to registered {@link LibraryListener}s.
+ *
+ * <p>{@link Album} and {@link Photo} are serialized, so rather than
+ * carrying listener fields of their own they report every mutation here.
+ * Indexes that must stay in step with the library (smart albums,
+ * suggestions, ...) register once and are updated incrementally.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class LibraryEvents {
+
+    private static final List<LibraryListener> LISTENERS = new CopyOnWriteArrayList<>();
+
+    private LibraryEvents() {}
+
+    /**
+     * Registers a listener for all future changes.
+     *
+     * @param listener the listener to add
+     */
+    public static void addListener(LibraryListener listener) {
+        LISTENERS.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     *
+     * @param listener the listener to remove
+     */
+    public static void removeListener(LibraryListener listener) {
+        LISTENERS.remove(listener);
+    }
+
+    static void tagAdded(Photo photo, Tag tag) {
+        for (LibraryListener l : LISTENERS) l.onTagAdded(photo, tag);
+    }
+
+    static void tagRemoved(Photo photo, Tag tag) {
+        for (LibraryListener l : LISTENERS) l.onTagRemoved(photo, tag);
+    }
+
+    static void captionChanged(Photo photo, String oldCaption) {
+        for (LibraryListener l : LISTENERS) l.onCaptionChanged(photo, oldCaption);
+    }
+
+    static void dateChanged(Photo photo, long oldMillis) {
+        for (LibraryListener l : LISTENERS) l.onDateChanged(photo, oldMillis);
+    }
+
+    static void photoAdded(Album album, Photo photo) {
+        for (LibraryListener l : LISTENERS) l.onPhotoAdded(album, photo);
+    }
+
+    static void photoRemoved(Album album, Photo photo) {
+        for (LibraryListener l : LISTENERS) l.onPhotoRemoved(album, photo);
+    }
+
+    static void albumRemoved(Album album) {
+        for (LibraryListener l : LISTENERS) l.onAlbumRemoved(album);
+    }
+}
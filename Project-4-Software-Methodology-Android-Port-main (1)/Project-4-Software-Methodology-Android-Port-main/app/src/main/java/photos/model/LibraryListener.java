@@ -0,0 +1,72 @@
+package photos.model;
+
+/**
+ * Receives notifications of changes to albums and photos.
+ *
+ * <p>Register with {@link LibraryEvents#addListener(LibraryListener)}.
+ * Every method has an empty default, so listeners only override the
+ * changes they care about. Notifications are delivered synchronously on
+ * the thread that made the change.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public interface LibraryListener {
+
+    /**
+     * Called after a tag was added to a photo.
+     *
+     * @param photo the photo
+     * @param tag the tag that was added
+     */
+    default void onTagAdded(Photo photo, Tag tag) {}
+
+    /**
+     * Called after a tag was removed from a photo.
+     *
+     * @param photo the photo
+     * @param tag the tag that was removed
+     */
+    default void onTagRemoved(Photo photo, Tag tag) {}
+
+    /**
+     * Called after a photo's caption changed.
+     *
+     * @param photo the photo
+     * @param oldCaption the caption before the change
+     */
+    default void onCaptionChanged(Photo photo, String oldCaption) {}
+
+    /**
+     * Called after a photo's date changed, e.g. because its file was
+     * replaced on disk.
+     *
+     * @param photo the photo
+     * @param oldMillis the date before the change, in epoch milliseconds
+     */
+    default void onDateChanged(Photo photo, long oldMillis) {}
+
+    /**
+     * Called after a photo was added to an album.
+     *
+     * @param album the album
+     * @param photo the photo that was added
+     */
+    default void onPhotoAdded(Album album, Photo photo) {}
+
+    /**
+     * Called after a photo was removed from an album.
+     *
+     * @param album the album
+     * @param photo the photo that was removed
+     */
+    default void onPhotoRemoved(Album album, Photo photo) {}
+
+    /**
+     * Called after an album and all of its photos were removed from the
+     * library.
+     *
+     * @param album the album that was removed
+     */
+    default void onAlbumRemoved(Album album) {}
+}
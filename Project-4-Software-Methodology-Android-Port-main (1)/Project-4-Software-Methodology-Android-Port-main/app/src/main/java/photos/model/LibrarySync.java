@@ -0,0 +1,265 @@
+package photos.model;
+
+import photos.metrics.Metrics;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reconciles the library with changes made to photo files outside the
+ * app.
+ *
+ * <p>A {@link FileManifest} remembers each file's size, modification time
+ * and content hash. A sync reads one set of attributes per file and only
+ * hashes files whose size or modification time moved, so a library with
+ * few changes is checked without reading any image data. When the
+ * directories that changed are known, e.g. from a
+ * {@link DirectoryWatcher}, only files in those directories are checked
+ * at all.</p>
+ *
+ * <p>A sync runs in two steps so the slow part never touches the model.
+ * {@link #check} only looks at file paths and may run on any thread; it
+ * records the new date of each file whose content changed.
+ * {@link #apply} then gives the photos of those files their new date,
+ * which reaches smart albums and other listeners through
+ * {@link LibraryEvents}, and must run wherever the model is edited. Save
+ * the manifest with {@link #save} only once the albums holding those
+ * photos are saved, or a crash in between would lose the new dates.
+ * Missing files are reported but their photos are kept, since files on
+ * removable storage may come back.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class LibrarySync {
+
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /** Outcome of one sync. */
+    public static final class Result {
+        private final List<String> changed = new ArrayList<>();
+        private final List<String> missing = new ArrayList<>();
+        private final List<String> restored = new ArrayList<>();
+        private final Map<String, Long> changedDates = new HashMap<>();
+        private final Set<Album> affectedAlbums = new LinkedHashSet<>();
+        private int filesChecked;
+        private int filesHashed;
+
+        /** Paths of files whose content changed since the last sync. */
+        public List<String> getChanged() {
+            return Collections.unmodifiableList(changed);
+        }
+
+        /** Paths of files that disappeared since the last sync. */
+        public List<String> getMissing() {
+            return Collections.unmodifiableList(missing);
+        }
+
+        /** Paths of files that were missing and are back. */
+        public List<String> getRestored() {
+            return Collections.unmodifiableList(restored);
+        }
+
+        /**
+         * Albums with photos whose date changed and that need saving;
+         * empty until the result has been applied.
+         */
+        public Set<Album> getAffectedAlbums() {
+            return Collections.unmodifiableSet(affectedAlbums);
+        }
+
+        public int getFilesChecked() {
+            return filesChecked;
+        }
+
+        public int getFilesHashed() {
+            return filesHashed;
+        }
+
+        /**
+         * Checks if anything the user can see changed.
+         *
+         * @return true if any file changed, disappeared or came back
+         */
+        public boolean hasChanges() {
+            return !changed.isEmpty() || !missing.isEmpty() || !restored.isEmpty();
+        }
+    }
+
+    private final File manifestFile;
+    private FileManifest manifest;
+
+    /**
+     * Creates a sync engine with the manifest stored in a file.
+     *
+     * @param manifestFile the manifest file; need not exist yet
+     */
+    public LibrarySync(File manifestFile) {
+        this.manifestFile = manifestFile;
+        this.manifest = FileManifest.read(manifestFile);
+    }
+
+    /**
+     * Checks the library's files against the manifest. Reads no photos or
+     * albums, so it can run off the thread that edits them.
+     *
+     * @param paths the path of every photo in the library
+     * @param directories the only directories that may have changed, or
+     *        null to check every file
+     * @return what changed; pass it to {@link #apply} to update the photos
+     */
+    public synchronized Result check(Set<String> paths, Collection<File> directories) {
+        long start = System.nanoTime();
+        Result result = new Result();
+
+        Set<String> dirNames = null;
+        if (directories != null) {
+            dirNames = new HashSet<>();
+            for (File dir : directories) dirNames.add(dir.getAbsolutePath());
+        }
+
+        for (String path : paths) {
+            FileManifest.Entry old = manifest.get(path);
+            // Files never seen before are checked even outside the given directories
+            if (dirNames != null && old != null
+                    && !dirNames.contains(new File(path).getAbsoluteFile().getParent())) {
+                continue;
+            }
+            check(path, old, result);
+        }
+
+        if (directories == null) manifest.retainAll(paths);
+        Metrics.LIBRARY_SYNC.recordSince(start);
+        return result;
+    }
+
+    /**
+     * Gives the photos of changed files their file's new date and records
+     * the albums holding them in the result. Must run on the thread that
+     * edits the model.
+     *
+     * @param result the result of {@link #check}
+     * @param albums all albums in the library
+     * @return the albums that need saving
+     */
+    public Set<Album> apply(Result result, List<Album> albums) {
+        if (result.changedDates.isEmpty()) return result.getAffectedAlbums();
+
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                Long modified = result.changedDates.get(p.getFilePath());
+                if (modified == null) continue;
+                p.setDateMillis(modified);
+                result.affectedAlbums.add(a);
+            }
+        }
+        return result.getAffectedAlbums();
+    }
+
+    /**
+     * Writes the manifest so the next sync starts from this one. Nothing
+     * is written if no file changed.
+     *
+     * @throws IOException if the manifest could not be written
+     */
+    public synchronized void save() throws IOException {
+        if (manifest.isDirty()) manifest.write(manifestFile);
+    }
+
+    /**
+     * Forgets what checks found since the manifest was last saved, so the
+     * next sync reports the same changes again. Used when the changes
+     * could not be applied.
+     */
+    public synchronized void discard() {
+        manifest = FileManifest.read(manifestFile);
+    }
+
+    private void check(String path, FileManifest.Entry old, Result result) {
+        result.filesChecked++;
+
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(Paths.get(path), BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            attrs = null;
+        } catch (IOException e) {
+            System.err.println("ERROR CHECKING FILE: " + e.getMessage());
+            return;
+        }
+
+        if (attrs == null || !attrs.isRegularFile()) {
+            if (old == null || !old.isMissing()) {
+                result.missing.add(path);
+                manifest.put(path, new FileManifest.Entry(FileManifest.MISSING, 0,
+                        old == null ? 0 : old.hash));
+            }
+            return;
+        }
+
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        if (old != null && old.matches(size, modified)) return;
+
+        long hash;
+        try {
+            hash = hash(path);
+            result.filesHashed++;
+            Metrics.FILES_HASHED.increment();
+        } catch (IOException e) {
+            System.err.println("ERROR HASHING FILE: " + e.getMessage());
+            return;
+        }
+        manifest.put(path, new FileManifest.Entry(size, modified, hash));
+
+        if (old == null) return;
+        if (old.isMissing()) result.restored.add(path);
+        // A missing file first seen while missing has no hash to compare
+        boolean known = !old.isMissing() || old.hash != 0;
+        if (known && hash != old.hash) {
+            result.changed.add(path);
+            result.changedDates.put(path, modified);
+        }
+    }
+
+    /** Returns the first 64 bits of the file's SHA-256. */
+    private static long hash(String path) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        byte[] buffer = new byte[HASH_BUFFER_SIZE];
+        try (InputStream in = Files.newInputStream(Paths.get(path))) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                digest.update(buffer, 0, n);
+            }
+        }
+
+        byte[] d = digest.digest();
+        long hash = 0;
+        for (int i = 0; i < 8; i++) {
+            hash = (hash << 8) | (d[i] & 0xFF);
+        }
+        return hash;
+    }
+}
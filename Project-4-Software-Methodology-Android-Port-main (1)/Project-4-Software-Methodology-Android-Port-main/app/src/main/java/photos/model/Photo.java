@@ -1,6 +1,8 @@
 package photos.model;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -22,7 +24,7 @@ public class Photo implements Serializable {
     /** File path of the photo. */
     private String filePath;
 
-    /** Caption for the photo. */
+    /** Caption for the photo; never null, empty if there is none. */
     private String caption;
 
     /** Date the photo was taken or last modified. */
@@ -52,6 +54,23 @@ public class Photo implements Serializable {
         }
         this.date.set(Calendar.MILLISECOND, 0);
     }
+
+    /**
+     * Constructs a Photo with metadata restored from elsewhere, such as a
+     * library archive, rather than read from the file.
+     * 
+     * @param filePath the file path to the photo
+     * @param caption the caption, or null for none
+     * @param dateMillis the photo date in epoch milliseconds
+     * @param tags the tags of the photo
+     */
+    Photo(String filePath, String caption, long dateMillis, List<Tag> tags) {
+        this.filePath = filePath;
+        this.caption = caption == null ? "" : caption;
+        this.tags = new ArrayList<>(tags);
+        this.date = Calendar.getInstance();
+        this.date.setTimeInMillis(dateMillis);
+    }
     
     /** 
      * Returns the file path of the photo. 
@@ -71,10 +90,14 @@ public class Photo implements Serializable {
     
     /** 
      * Sets the caption for the photo. 
-     * @param caption the caption to set
+     * @param caption the caption to set, or null to clear it
      */
     public void setCaption(String caption) {
-        this.caption = caption;
+        String old = this.caption;
+        this.caption = caption == null ? "" : caption;
+        if (!old.equals(this.caption)) {
+            LibraryEvents.captionChanged(this, old);
+        }
     }
     
     /** 
@@ -85,6 +108,20 @@ public class Photo implements Serializable {
         return date;
     }
     
+    /**
+     * Sets the photo date, e.g. after its file was replaced on disk.
+     *
+     * @param millis the new date in epoch milliseconds
+     */
+    void setDateMillis(long millis) {
+        long old = date.getTimeInMillis();
+        date.setTimeInMillis(millis);
+        date.set(Calendar.MILLISECOND, 0);
+        if (date.getTimeInMillis() != old) {
+            LibraryEvents.dateChanged(this, old);
+        }
+    }
+
     /** 
      * Returns the date as a formatted string (MM/DD/YYYY HH:MM:SS). 
      * @return the formatted date string
@@ -118,9 +155,24 @@ public class Photo implements Serializable {
             return false;
         }
         tags.add(tag);
+        LibraryEvents.tagAdded(this, tag);
         return true;
     }
     
+    /**
+     * Puts a tag back at a position, e.g. when undoing its removal.
+     * 
+     * @param index the position, clamped to the number of tags
+     * @param tag the Tag to insert
+     * @return true if the tag was inserted, false if it already exists
+     */
+    boolean insertTag(int index, Tag tag) {
+        if (hasTag(tag)) return false;
+        tags.add(Math.max(0, Math.min(index, tags.size())), tag);
+        LibraryEvents.tagAdded(this, tag);
+        return true;
+    }
+
     /**
      * Removes a tag from the photo.
      * 
@@ -128,7 +180,11 @@ public class Photo implements Serializable {
      * @return true if the tag was removed, false otherwise
      */
     public boolean removeTag(Tag tag) {
-        return tags.remove(tag);
+        if (!tags.remove(tag)) {
+            return false;
+        }
+        LibraryEvents.tagRemoved(this, tag);
+        return true;
     }
     
     /**
@@ -179,6 +235,12 @@ public class Photo implements Serializable {
         return new File(filePath).getName();
     }
     
+    /** Restores a serialized photo, which may predate the non-null caption. */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (caption == null) caption = "";
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) return true;
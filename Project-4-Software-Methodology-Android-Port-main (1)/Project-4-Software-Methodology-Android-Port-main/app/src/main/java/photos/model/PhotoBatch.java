@@ -0,0 +1,298 @@
+package photos.model;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Collects bulk photo operations and applies them as one transaction.
+ *
+ * <p>Operations are queued with the builder-style methods and nothing is
+ * changed until {@link #commit()} is called. The whole batch is then
+ * applied in order; if any operation fails, the ones already applied are
+ * rolled back and no album is left partially modified. Every album the
+ * batch touched is saved exactly once afterwards; if a save fails, the
+ * whole batch is rolled back, the albums already written are written
+ * again in their old state, and the failure is reported.</p>
+ *
+ * <pre>
+ * DataManager.getInstance().newBatch()
+ *         .move(selected, holiday, archive)
+ *         .tag(selected, new Tag("location", "Rome"))
+ *         .commit();
+ * </pre>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoBatch {
+
+    /** A single reversible step of a batch. */
+    private interface Operation {
+        void apply();
+        void rollback();
+    }
+
+    private final DataManager dataManager;
+    private final List<Operation> operations = new ArrayList<>();
+    private final Set<Album> touched = new LinkedHashSet<>();
+    private boolean committed;
+
+    PhotoBatch(DataManager dataManager) {
+        this.dataManager = dataManager;
+    }
+
+    /**
+     * Queues copying photos into an album. Photos already in the target
+     * album are skipped.
+     *
+     * @param photos the photos to copy
+     * @param to the target album
+     * @return this batch
+     */
+    public PhotoBatch copy(Collection<Photo> photos, Album to) {
+        final List<Photo> toCopy = new ArrayList<>(photos);
+        touched.add(to);
+        operations.add(new Operation() {
+            private List<Photo> added;
+
+            @Override
+            public void apply() {
+                added = to.addPhotos(toCopy);
+            }
+
+            @Override
+            public void rollback() {
+                if (added != null) to.removePhotos(added);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Queues moving photos from one album to another.
+     *
+     * @param photos the photos to move
+     * @param from the album to move them out of
+     * @param to the album to move them into
+     * @return this batch
+     */
+    public PhotoBatch move(Collection<Photo> photos, Album from, Album to) {
+        if (from.equals(to)) return this;
+        copy(photos, to);
+        return delete(photos, from);
+    }
+
+    /**
+     * Queues removing photos from an album.
+     *
+     * @param photos the photos to remove
+     * @param from the album to remove them from
+     * @return this batch
+     */
+    public PhotoBatch delete(Collection<Photo> photos, Album from) {
+        final List<Photo> toRemove = new ArrayList<>(photos);
+        touched.add(from);
+        operations.add(new Operation() {
+            private List<Photo> before;
+
+            @Override
+            public void apply() {
+                before = new ArrayList<>(from.getPhotos());
+                from.removePhotos(toRemove);
+            }
+
+            @Override
+            public void rollback() {
+                if (before != null) from.restorePhotos(before);
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Queues adding a tag to photos. Photos that already have the tag are
+     * skipped.
+     *
+     * @param photos the photos to tag
+     * @param tag the tag to add
+     * @return this batch
+     */
+    public PhotoBatch tag(Collection<Photo> photos, Tag tag) {
+        final List<Photo> toTag = new ArrayList<>(photos);
+        touchAlbumsOf(toTag);
+        operations.add(new Operation() {
+            private final List<Photo> tagged = new ArrayList<>();
+
+            @Override
+            public void apply() {
+                for (Photo p : toTag) {
+                    if (p.addTag(tag)) tagged.add(p);
+                }
+            }
+
+            @Override
+            public void rollback() {
+                for (Photo p : tagged) {
+                    p.removeTag(tag);
+                }
+                tagged.clear();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Queues removing a tag from photos.
+     *
+     * @param photos the photos to untag
+     * @param tag the tag to remove
+     * @return this batch
+     */
+    public PhotoBatch untag(Collection<Photo> photos, Tag tag) {
+        final List<Photo> toUntag = new ArrayList<>(photos);
+        touchAlbumsOf(toUntag);
+        operations.add(new Operation() {
+            private final List<Photo> untagged = new ArrayList<>();
+
+            @Override
+            public void apply() {
+                for (Photo p : toUntag) {
+                    if (p.removeTag(tag)) untagged.add(p);
+                }
+            }
+
+            @Override
+            public void rollback() {
+                for (Photo p : untagged) {
+                    p.addTag(tag);
+                }
+                untagged.clear();
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Queues creating a new album containing the given photos, e.g. the
+     * results of a search.
+     *
+     * @param name the name of the new album
+     * @param photos the photos to put in it
+     * @return this batch
+     */
+    public PhotoBatch createAlbum(String name, Collection<Photo> photos) {
+        final Album album = new Album(name);
+        final List<Photo> contents = new ArrayList<>(photos);
+        touched.add(album);
+        operations.add(new Operation() {
+            private boolean created;
+
+            @Override
+            public void apply() {
+                if (dataManager.getAlbumByName(name) != null) {
+                    throw new IllegalStateException("Album already exists: " + name);
+                }
+                album.addPhotos(contents);
+                dataManager.attachAlbum(album);
+                created = true;
+            }
+
+            @Override
+            public void rollback() {
+                if (created) dataManager.detachAlbum(album);
+                album.removePhotos(new ArrayList<>(album.getPhotos()));
+            }
+        });
+        return this;
+    }
+
+    /**
+     * Applies all queued operations and saves every affected album once.
+     * If an operation fails, everything applied so far is rolled back and
+     * nothing is written. If an album cannot be saved, the whole batch is
+     * rolled back and the albums already saved are restored on disk.
+     *
+     * @throws IOException if an album could not be saved
+     * @throws IllegalStateException if the batch was already committed or
+     *         an operation could not be applied
+     */
+    public void commit() throws IOException {
+        if (committed) {
+            throw new IllegalStateException("Batch already committed");
+        }
+        committed = true;
+
+        int applied = 0;
+        try {
+            for (Operation op : operations) {
+                op.apply();
+                applied++;
+            }
+        } catch (RuntimeException e) {
+            // Roll back the failed operation too, it may be partly applied
+            rollback(applied);
+            throw e;
+        }
+
+        List<Album> written = new ArrayList<>();
+        try {
+            for (Album a : touched) {
+                dataManager.writeAlbum(a);
+                written.add(a);
+            }
+        } catch (IOException e) {
+            rollback(operations.size() - 1);
+            restoreFiles(written);
+            throw e;
+        }
+    }
+
+    /** Rolls back the operations up to and including {@code last}, newest first. */
+    private void rollback(int last) {
+        for (int i = Math.min(last, operations.size() - 1); i >= 0; i--) {
+            operations.get(i).rollback();
+        }
+    }
+
+    /** Writes albums saved before a failed save back in their rolled-back state. */
+    private void restoreFiles(List<Album> written) {
+        for (Album a : written) {
+            if (dataManager.getAlbumByName(a.getName()) == a) {
+                dataManager.saveAlbum(a);
+            } else {
+                // Created by this batch, so it had no file before
+                dataManager.deleteAlbumFile(a);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of queued operations.
+     *
+     * @return the operation count
+     */
+    public int size() {
+        return operations.size();
+    }
+
+    // Tag changes are stored inside the album files, so every album that
+    // holds one of the photos has to be rewritten
+    private void touchAlbumsOf(List<Photo> photos) {
+        Set<String> paths = new LinkedHashSet<>();
+        for (Photo p : photos) {
+            paths.add(p.getFilePath());
+        }
+        for (Album a : dataManager.getAlbums()) {
+            for (Photo p : a.getPhotos()) {
+                if (paths.contains(p.getFilePath())) {
+                    touched.add(a);
+                    break;
+                }
+            }
+        }
+    }
+}
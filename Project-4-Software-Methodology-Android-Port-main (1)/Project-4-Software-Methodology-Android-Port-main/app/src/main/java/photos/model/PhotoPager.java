@@ -0,0 +1,157 @@
+package photos.model;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Provides random access to the photos of an album in fixed-size pages.
+ *
+ * <p>Only the pages that are actually touched are fetched from the
+ * {@link PageSource}, and at most {@code maxPages} of them are kept,
+ * evicting the least recently used page first. A pager over a loaded
+ * {@link Album} pages through its list, which is already in memory, and
+ * returns the live photos so they can be edited.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoPager {
+
+    /** Default number of photos per page. */
+    public static final int DEFAULT_PAGE_SIZE = 64;
+
+    /** Default number of pages kept in memory. */
+    public static final int DEFAULT_MAX_PAGES = 8;
+
+    /**
+     * Supplies pages of photos to a pager.
+     */
+    public interface PageSource {
+
+        /**
+         * Returns the total number of photos.
+         *
+         * @return the photo count
+         */
+        int size();
+
+        /**
+         * Loads a range of photos.
+         *
+         * @param offset index of the first photo
+         * @param limit maximum number of photos to return
+         * @return the photos in the range, possibly fewer than {@code limit}
+         */
+        List<Photo> loadPage(int offset, int limit);
+    }
+
+    private final PageSource source;
+    private final int pageSize;
+    private final Map<Integer, List<Photo>> pages;
+
+    /**
+     * Creates a pager over the photos of a loaded album with the default
+     * page size and cache.
+     *
+     * @param album the album to page through
+     */
+    public PhotoPager(Album album) {
+        this(albumSource(album), DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    /**
+     * Creates a pager over an arbitrary page source.
+     *
+     * @param source the source of photos
+     * @param pageSize number of photos per page
+     * @param maxPages number of pages to keep in memory
+     */
+    public PhotoPager(PageSource source, int pageSize, final int maxPages) {
+        if (pageSize <= 0 || maxPages <= 0) {
+            throw new IllegalArgumentException("Page size and page count must be positive");
+        }
+        this.source = source;
+        this.pageSize = pageSize;
+        this.pages = new LinkedHashMap<Integer, List<Photo>>(maxPages + 1, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<Photo>> eldest) {
+                return size() > maxPages;
+            }
+        };
+    }
+
+    /**
+     * Returns the total number of photos.
+     *
+     * @return the photo count
+     */
+    public int size() {
+        return source.size();
+    }
+
+    /**
+     * Returns the photo at the given index, loading its page if needed.
+     *
+     * @param index the index of the photo
+     * @return the photo
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public Photo get(int index) {
+        if (index < 0 || index >= source.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + source.size());
+        }
+
+        int pageIndex = index / pageSize;
+        List<Photo> page = pages.get(pageIndex);
+        if (page == null) {
+            page = source.loadPage(pageIndex * pageSize, pageSize);
+            pages.put(pageIndex, page);
+        }
+
+        int offset = index - pageIndex * pageSize;
+        if (offset >= page.size()) {
+            // The source grew since this short page was loaded; reload it once
+            page = source.loadPage(pageIndex * pageSize, pageSize);
+            pages.put(pageIndex, page);
+            if (offset >= page.size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + source.size());
+            }
+        }
+        return page.get(offset);
+    }
+
+    /** Drops all cached pages, e.g. after photos were added or removed. */
+    public void invalidate() {
+        pages.clear();
+    }
+
+    /**
+     * Returns the number of pages currently held in memory.
+     *
+     * @return the resident page count
+     */
+    public int getResidentPageCount() {
+        return pages.size();
+    }
+
+    /**
+     * Returns a page source over the photos of a loaded album.
+     *
+     * @param album the album
+     * @return the page source
+     */
+    static PageSource albumSource(final Album album) {
+        return new PageSource() {
+            @Override
+            public int size() {
+                return album.getPhotoCount();
+            }
+
+            @Override
+            public List<Photo> loadPage(int offset, int limit) {
+                return album.getPhotos(offset, limit);
+            }
+        };
+    }
+}
@@ -0,0 +1,162 @@
+package photos.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A search over photos by tags, date range and caption text.
+ *
+ * <p>All conditions that are set must hold. The tag condition matches
+ * photos having all of the given tags ({@link #allOf}) or any of them
+ * ({@link #anyOf}); the caption condition is a case-insensitive
+ * substring match.</p>
+ *
+ * <p>Queries are immutable: the {@code with} methods return a new query.
+ * Smart albums index a query by the conditions it has when registered,
+ * so a query must not change afterwards.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoQuery implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Tags to match; empty means any tags. */
+    private final List<Tag> tags;
+
+    /** True to require every tag, false to require at least one. */
+    private final boolean matchAllTags;
+
+    /** Earliest photo date in epoch milliseconds, inclusive. */
+    private final long fromMillis;
+
+    /** Latest photo date in epoch milliseconds, inclusive. */
+    private final long toMillis;
+
+    /** Lower-case text the caption must contain, or null. */
+    private final String captionText;
+
+    private PhotoQuery(List<Tag> tags, boolean matchAllTags, long fromMillis, long toMillis,
+                       String captionText) {
+        this.tags = new ArrayList<>(tags);
+        this.matchAllTags = matchAllTags;
+        this.fromMillis = fromMillis;
+        this.toMillis = toMillis;
+        this.captionText = captionText;
+    }
+
+    /**
+     * Creates a query matching photos that have every given tag.
+     *
+     * @param tags the required tags; none to match any photo
+     * @return the query
+     */
+    public static PhotoQuery allOf(Tag... tags) {
+        List<Tag> list = new ArrayList<>();
+        Collections.addAll(list, tags);
+        return new PhotoQuery(list, true, Long.MIN_VALUE, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates a query matching photos that have at least one given tag.
+     *
+     * @param tags the candidate tags
+     * @return the query
+     */
+    public static PhotoQuery anyOf(Tag... tags) {
+        List<Tag> list = new ArrayList<>();
+        Collections.addAll(list, tags);
+        return new PhotoQuery(list, false, Long.MIN_VALUE, Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Returns a copy of the query restricted to photos dated within a
+     * range.
+     *
+     * @param fromMillis start of the range in epoch milliseconds, inclusive
+     * @param toMillis end of the range in epoch milliseconds, inclusive
+     * @return the new query
+     */
+    public PhotoQuery withDateRange(long fromMillis, long toMillis) {
+        return new PhotoQuery(tags, matchAllTags, fromMillis, toMillis, captionText);
+    }
+
+    /**
+     * Returns a copy of the query restricted to photos whose caption
+     * contains the text, ignoring case.
+     *
+     * @param text the text to look for; null or empty for any caption
+     * @return the new query
+     */
+    public PhotoQuery withCaptionContaining(String text) {
+        String lower = text == null || text.isEmpty() ? null : text.toLowerCase(Locale.ROOT);
+        return new PhotoQuery(tags, matchAllTags, fromMillis, toMillis, lower);
+    }
+
+    /**
+     * Checks if a photo satisfies every condition of the query.
+     *
+     * @param photo the photo to test
+     * @return true if the photo matches
+     */
+    public boolean matches(Photo photo) {
+        long date = photo.getDate().getTimeInMillis();
+        if (date < fromMillis || date > toMillis) return false;
+
+        if (captionText != null
+                && !photo.getCaption().toLowerCase(Locale.ROOT).contains(captionText)) {
+            return false;
+        }
+
+        if (tags.isEmpty()) return true;
+        for (Tag t : tags) {
+            boolean has = photo.hasTag(t);
+            if (has && !matchAllTags) return true;
+            if (!has && matchAllTags) return false;
+        }
+        return matchAllTags;
+    }
+
+    /**
+     * Checks if the result can change when a photo's date changes.
+     *
+     * @return true if the query has a date range
+     */
+    public boolean dependsOnDate() {
+        return fromMillis != Long.MIN_VALUE || toMillis != Long.MAX_VALUE;
+    }
+
+    /**
+     * Checks if the result can change when a caption changes.
+     *
+     * @return true if the query has a caption condition
+     */
+    public boolean dependsOnCaption() {
+        return captionText != null;
+    }
+
+    public List<Tag> getTags() {
+        return Collections.unmodifiableList(tags);
+    }
+
+    public boolean isMatchAllTags() {
+        return matchAllTags;
+    }
+
+    /**
+     * Returns the distinct tag types the query has conditions on.
+     *
+     * @return the tag names
+     */
+    List<String> getTagNames() {
+        List<String> names = new ArrayList<>();
+        for (Tag t : tags) {
+            if (!names.contains(t.getName())) names.add(t.getName());
+        }
+        return names;
+    }
+}
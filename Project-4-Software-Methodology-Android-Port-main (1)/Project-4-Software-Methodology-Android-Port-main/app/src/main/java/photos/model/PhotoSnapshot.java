@@ -0,0 +1,117 @@
+package photos.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable copy of the displayable state of a photo.
+ *
+ * <p>Used by the photo list so it can be diffed off the main thread
+ * without touching the live {@link Photo} objects.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class PhotoSnapshot {
+
+    private final long id;
+    private final String filePath;
+    private final String fileName;
+    private final String caption;
+    private final long dateMillis;
+    private final String tags;
+
+    private PhotoSnapshot(Photo photo) {
+        this.id = StableIds.of(photo.getFilePath());
+        this.filePath = photo.getFilePath();
+        this.fileName = photo.getFileName();
+        this.caption = photo.getCaption();
+        this.dateMillis = photo.getDate().getTimeInMillis();
+        this.tags = photo.getTagsString();
+    }
+
+    /**
+     * Captures the current state of a photo.
+     *
+     * @param photo the photo to copy
+     * @return a snapshot of the photo
+     */
+    public static PhotoSnapshot of(Photo photo) {
+        return new PhotoSnapshot(photo);
+    }
+
+    /**
+     * Captures the current state of every photo in the list.
+     *
+     * @param photos the photos to copy
+     * @return an unmodifiable list of snapshots in the same order
+     */
+    public static List<PhotoSnapshot> listOf(List<Photo> photos) {
+        List<PhotoSnapshot> list = new ArrayList<>(photos.size());
+        for (Photo p : photos) {
+            list.add(new PhotoSnapshot(p));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getFilePath() {
+        return filePath;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public String getCaption() {
+        return caption;
+    }
+
+    public long getDateMillis() {
+        return dateMillis;
+    }
+
+    public String getTags() {
+        return tags;
+    }
+
+    /**
+     * Returns the caption, or the file name if the photo has no caption.
+     *
+     * @return the text to show under the photo
+     */
+    public String getDisplayCaption() {
+        return caption.isEmpty() ? fileName : caption;
+    }
+
+    /**
+     * Checks if both snapshots describe the same photo.
+     *
+     * @param other the snapshot to compare
+     * @return true if both snapshots refer to the same file
+     */
+    public boolean isSameItem(PhotoSnapshot other) {
+        return id == other.id && filePath.equals(other.filePath);
+    }
+
+    /**
+     * Checks if both snapshots would be displayed identically.
+     *
+     * @param other the snapshot to compare
+     * @return true if nothing visible differs between the snapshots
+     */
+    public boolean hasSameContents(PhotoSnapshot other) {
+        return dateMillis == other.dateMillis
+                && caption.equals(other.caption)
+                && tags.equals(other.tags);
+    }
+
+    @Override
+    public String toString() {
+        return fileName;
+    }
+}
@@ -0,0 +1,392 @@
+package photos.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Photo metadata stored outside the Java heap, for libraries too large
+ * to keep as {@link Photo} objects.
+ *
+ * <p>Each photo is a fixed-width row in a direct {@link ByteBuffer}:</p>
+ * <pre>
+ * [id:8][date:8][path:4][caption:4][tagStart:4][tagCount:4]   32 bytes
+ * </pre>
+ * <p>{@code path} and {@code caption} are offsets into a string arena, a
+ * second direct buffer of {@code [length][UTF-8 bytes]} entries, with -1
+ * for an empty caption. A photo's tags are {@code tagCount} consecutive
+ * {@code [name:4][value:4]} arena offsets in a third buffer starting at
+ * {@code tagStart}. Tag names and values are stored once each, so a tag
+ * comparison is a comparison of two offsets.</p>
+ *
+ * <p>Rows are read through a reusable {@link Row} view, so scanning the
+ * table allocates nothing; {@link Row#toPhoto()} turns a row back into a
+ * regular photo for screens that need one. The garbage collector only
+ * sees the three buffers and the tag dictionary, whatever the number of
+ * photos.</p>
+ *
+ * <p>Photos are looked up by the {@link StableIds stable id} of their
+ * path through an open-addressing array of row indexes. Different paths
+ * can share an id, so a match is confirmed against the stored path.</p>
+ *
+ * <p>Tables are append-only: changing a caption appends the new text and
+ * leaves the old one in the arena. Not thread-safe.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoTable {
+
+    static final int ROW_SIZE = 32;
+    private static final int ID = 0;
+    private static final int DATE = 8;
+    private static final int PATH = 16;
+    private static final int CAPTION = 20;
+    private static final int TAG_START = 24;
+    private static final int TAG_COUNT = 28;
+
+    private static final int TAG_SIZE = 8;
+    private static final int NO_STRING = -1;
+    private static final int INITIAL_ROWS = 1024;
+
+    private ByteBuffer rows;
+    private ByteBuffer tags;
+    private ByteBuffer arena;
+
+    private int rowCount;
+    private int tagCount;
+    private int arenaSize;
+
+    /** Arena offset of every tag name and value, for sharing and lookup. */
+    private final Map<String, Integer> tagStrings = new HashMap<>();
+
+    /**
+     * Open-addressing index from stable id to row: each slot holds a row
+     * index plus one, or 0 if empty, and the id is read from the row.
+     */
+    private int[] slots = new int[INITIAL_ROWS * 2];
+
+    public PhotoTable() {
+        rows = allocate(INITIAL_ROWS * ROW_SIZE);
+        tags = allocate(INITIAL_ROWS * TAG_SIZE);
+        arena = allocate(INITIAL_ROWS * 64);
+    }
+
+    /**
+     * Builds a table of every distinct photo in the library.
+     *
+     * @param albums all albums
+     * @return the table
+     */
+    public static PhotoTable build(List<Album> albums) {
+        PhotoTable table = new PhotoTable();
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                table.add(p);
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Appends a photo, unless a photo with the same file path is already
+     * in the table.
+     *
+     * @param photo the photo to copy into the table
+     * @return the row index of the photo
+     */
+    public int add(Photo photo) {
+        long id = StableIds.of(photo.getFilePath());
+        int existing = find(id, photo.getFilePath());
+        if (existing >= 0) return existing;
+
+        int row = rowCount;
+        rows = ensure(rows, (row + 1) * ROW_SIZE);
+        tags = ensure(tags, (tagCount + photo.getTags().size()) * TAG_SIZE);
+
+        int base = row * ROW_SIZE;
+        rows.putLong(base + ID, id);
+        rows.putLong(base + DATE, photo.getDate().getTimeInMillis());
+        rows.putInt(base + PATH, appendString(photo.getFilePath()));
+        rows.putInt(base + CAPTION, photo.getCaption().isEmpty()
+                ? NO_STRING : appendString(photo.getCaption()));
+        rows.putInt(base + TAG_START, tagCount);
+        rows.putInt(base + TAG_COUNT, photo.getTags().size());
+
+        for (Tag t : photo.getTags()) {
+            int at = tagCount++ * TAG_SIZE;
+            tags.putInt(at, tagString(t.getName()));
+            tags.putInt(at + 4, tagString(t.getValue()));
+        }
+
+        rowCount++;
+        if (rowCount * 2 > slots.length) {
+            slots = new int[slots.length * 2];
+            for (int r = 0; r < rowCount; r++) {
+                insert(rows.getLong(r * ROW_SIZE + ID), r);
+            }
+        } else {
+            insert(id, row);
+        }
+        return row;
+    }
+
+    /**
+     * Returns the row index of the photo with a file path.
+     *
+     * @param filePath the photo's file path
+     * @return the row index, or -1 if the photo is not in the table
+     */
+    public int indexOf(String filePath) {
+        return find(StableIds.of(filePath), filePath);
+    }
+
+    /**
+     * Changes the caption of a row.
+     *
+     * @param row the row index
+     * @param caption the new caption
+     */
+    public void setCaption(int row, String caption) {
+        checkIndex(row);
+        rows.putInt(row * ROW_SIZE + CAPTION, caption.isEmpty() ? NO_STRING : appendString(caption));
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    /**
+     * Returns the number of bytes used outside the heap.
+     *
+     * @return the bytes used by rows, tags and strings
+     */
+    public long getOffHeapBytes() {
+        return (long) rowCount * ROW_SIZE + (long) tagCount * TAG_SIZE + arenaSize;
+    }
+
+    /**
+     * Creates a view for reading rows. A view can be moved to any row and
+     * reused for the whole table.
+     *
+     * @return a new view; call {@link Row#moveTo} before reading
+     */
+    public Row row() {
+        return new Row();
+    }
+
+    /**
+     * Returns a source of photos for a {@link PhotoPager}, materializing
+     * only the photos on the pages actually viewed.
+     *
+     * @return the page source over every row
+     */
+    public PhotoPager.PageSource pageSource() {
+        return new PhotoPager.PageSource() {
+            private final Row view = new Row();
+
+            @Override
+            public int size() {
+                return rowCount;
+            }
+
+            @Override
+            public List<Photo> loadPage(int offset, int limit) {
+                int end = Math.min(rowCount, offset + limit);
+                List<Photo> page = new ArrayList<>(Math.max(0, end - offset));
+                for (int i = offset; i < end; i++) {
+                    page.add(view.moveTo(i).toPhoto());
+                }
+                return page;
+            }
+        };
+    }
+
+    /** A movable view of one row. */
+    public final class Row {
+        private int index;
+        private int base;
+
+        private Row() {}
+
+        /**
+         * Positions the view on a row.
+         *
+         * @param row the row index
+         * @return this view
+         */
+        public Row moveTo(int row) {
+            checkIndex(row);
+            index = row;
+            base = row * ROW_SIZE;
+            return this;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /** Returns the photo's {@link StableIds stable id}. */
+        public long getId() {
+            return rows.getLong(base + ID);
+        }
+
+        public long getDateMillis() {
+            return rows.getLong(base + DATE);
+        }
+
+        public String getFilePath() {
+            return readString(rows.getInt(base + PATH));
+        }
+
+        public String getCaption() {
+            int offset = rows.getInt(base + CAPTION);
+            return offset == NO_STRING ? "" : readString(offset);
+        }
+
+        public int getTagCount() {
+            return rows.getInt(base + TAG_COUNT);
+        }
+
+        /**
+         * Returns one of the row's tags.
+         *
+         * @param i the tag index, from 0 to {@link #getTagCount()} - 1
+         * @return the tag
+         */
+        public Tag getTag(int i) {
+            int at = tagOffset(i);
+            return new Tag(readString(tags.getInt(at)), readString(tags.getInt(at + 4)));
+        }
+
+        /**
+         * Checks if the row has a tag without decoding any strings.
+         *
+         * @param tag the tag to look for
+         * @return true if the row has the tag
+         */
+        public boolean hasTag(Tag tag) {
+            Integer name = tagStrings.get(tag.getName());
+            Integer value = tagStrings.get(tag.getValue());
+            if (name == null || value == null) return false;
+
+            int start = rows.getInt(base + TAG_START);
+            int end = start + getTagCount();
+            for (int t = start; t < end; t++) {
+                int at = t * TAG_SIZE;
+                if (tags.getInt(at) == name && tags.getInt(at + 4) == value) return true;
+            }
+            return false;
+        }
+
+        /**
+         * Copies the row into a regular heap photo.
+         *
+         * @return the photo
+         */
+        public Photo toPhoto() {
+            int count = getTagCount();
+            List<Tag> list = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                list.add(getTag(i));
+            }
+            return new Photo(getFilePath(), getCaption(), getDateMillis(), list);
+        }
+
+        private int tagOffset(int i) {
+            if (i < 0 || i >= getTagCount()) {
+                throw new IndexOutOfBoundsException("Tag: " + i + ", Count: " + getTagCount());
+            }
+            return (rows.getInt(base + TAG_START) + i) * TAG_SIZE;
+        }
+    }
+
+    private void checkIndex(int row) {
+        if (row < 0 || row >= rowCount) {
+            throw new IndexOutOfBoundsException("Row: " + row + ", Size: " + rowCount);
+        }
+    }
+
+    private int find(long id, String filePath) {
+        byte[] path = null;
+        int mask = slots.length - 1;
+        for (int i = slot(id, mask); slots[i] != 0; i = (i + 1) & mask) {
+            int row = slots[i] - 1;
+            if (rows.getLong(row * ROW_SIZE + ID) != id) continue;
+
+            if (path == null) path = filePath.getBytes(StandardCharsets.UTF_8);
+            if (stringEquals(rows.getInt(row * ROW_SIZE + PATH), path)) return row;
+        }
+        return -1;
+    }
+
+    private void insert(long id, int row) {
+        int mask = slots.length - 1;
+        int i = slot(id, mask);
+        while (slots[i] != 0) i = (i + 1) & mask;
+        slots[i] = row + 1;
+    }
+
+    private static int slot(long id, int mask) {
+        return (int) (id ^ (id >>> 32)) & mask;
+    }
+
+    private int tagString(String s) {
+        Integer offset = tagStrings.get(s);
+        if (offset == null) {
+            offset = appendString(s);
+            tagStrings.put(s, offset);
+        }
+        return offset;
+    }
+
+    private int appendString(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        int offset = arenaSize;
+        arena = ensure(arena, offset + 4 + bytes.length);
+        arena.putInt(offset, bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            arena.put(offset + 4 + i, bytes[i]);
+        }
+        arenaSize = offset + 4 + bytes.length;
+        return offset;
+    }
+
+    private boolean stringEquals(int offset, byte[] bytes) {
+        if (arena.getInt(offset) != bytes.length) return false;
+        for (int i = 0; i < bytes.length; i++) {
+            if (arena.get(offset + 4 + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    private String readString(int offset) {
+        byte[] bytes = new byte[arena.getInt(offset)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = arena.get(offset + 4 + i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** Returns the buffer, or a copy at least twice as large if it cannot hold {@code needed} bytes. */
+    private static ByteBuffer ensure(ByteBuffer buffer, int needed) {
+        if (needed < 0) throw new IllegalStateException("Photo table is full");
+        if (needed <= buffer.capacity()) return buffer;
+
+        long grown = Math.max(needed, (long) buffer.capacity() * 2);
+        ByteBuffer bigger = allocate((int) Math.min(Integer.MAX_VALUE - 8, grown));
+        ByteBuffer old = buffer.duplicate();
+        old.clear();
+        bigger.put(old);
+        bigger.clear();
+        return bigger;
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+}
@@ -0,0 +1,58 @@
+package photos.model;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * An album defined by a saved {@link PhotoQuery} rather than a fixed list
+ * of photos.
+ *
+ * <p>Membership is kept as a bitmap over the dense photo ids assigned by
+ * {@link SmartAlbums}, which updates it as the library changes. Only the
+ * name and query are persisted; the bitmap is rebuilt after loading.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class SmartAlbum implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final PhotoQuery query;
+
+    /** Ids of the photos currently matching the query. */
+    private transient BitSet members = new BitSet();
+
+    SmartAlbum(String name, PhotoQuery query) {
+        this.name = name;
+        this.query = query;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public PhotoQuery getQuery() {
+        return query;
+    }
+
+    /**
+     * Returns the number of photos currently in the album.
+     *
+     * @return the photo count
+     */
+    public int getPhotoCount() {
+        return members().cardinality();
+    }
+
+    BitSet members() {
+        if (members == null) members = new BitSet();
+        return members;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
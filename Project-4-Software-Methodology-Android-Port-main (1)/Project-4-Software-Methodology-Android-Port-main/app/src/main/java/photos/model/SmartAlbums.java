@@ -0,0 +1,277 @@
+package photos.model;
+
+import photos.metrics.Metrics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the membership of every {@link SmartAlbum} in step with the
+ * library.
+ *
+ * <p>Photos get dense ids the first time they are seen, and each smart
+ * album holds a bitmap of matching ids. The id of a photo that leaves its
+ * last album is freed and handed to the next new photo, so the ids and
+ * bitmaps stay as small as the library. Queries are indexed by the tag
+ * types they mention and by whether they look at captions, so a single
+ * mutation only re-evaluates that one photo against the queries it can
+ * affect:</p>
+ * <ul>
+ *   <li>a tag change: queries on that tag type</li>
+ *   <li>a caption change: queries with a caption condition</li>
+ *   <li>a date change: queries with a date range</li>
+ *   <li>a photo entering the library: every query</li>
+ *   <li>a photo leaving its last album: cleared from every bitmap</li>
+ * </ul>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class SmartAlbums implements LibraryListener {
+
+    private final List<SmartAlbum> smartAlbums = new ArrayList<>();
+
+    /** Smart albums whose query mentions a tag type, keyed by tag type. */
+    private final Map<String, List<SmartAlbum>> byTagName = new HashMap<>();
+
+    /** Smart albums whose query has a caption condition. */
+    private final List<SmartAlbum> byCaption = new ArrayList<>();
+
+    /** Smart albums whose query has a date range. */
+    private final List<SmartAlbum> byDate = new ArrayList<>();
+
+    /** Dense id of each photo, keyed by file path. */
+    private final Map<String, Integer> photoIds = new HashMap<>();
+
+    /** A representative photo object for each id. */
+    private final List<Photo> photosById = new ArrayList<>();
+
+    /** Number of albums each photo id is in; 0 once it left the library. */
+    private int[] albumCounts = new int[64];
+
+    /** Ids below {@code photosById.size()} that are not in use. */
+    private final BitSet freeIds = new BitSet();
+
+    /**
+     * Re-indexes the whole library and re-evaluates every smart album.
+     * Used once after loading, when albums were read without events.
+     *
+     * @param albums all albums in the library
+     */
+    public synchronized void rebuild(List<Album> albums) {
+        photoIds.clear();
+        photosById.clear();
+        freeIds.clear();
+        Arrays.fill(albumCounts, 0);
+
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                // idFor may grow the array, so it must run before the read
+                int id = idFor(p);
+                albumCounts[id]++;
+            }
+        }
+        for (SmartAlbum s : smartAlbums) {
+            evaluateAll(s);
+        }
+    }
+
+    /**
+     * Defines a new smart album and computes its initial contents.
+     *
+     * @param name the album name
+     * @param query the query defining its contents
+     * @return the smart album
+     */
+    public synchronized SmartAlbum create(String name, PhotoQuery query) {
+        SmartAlbum album = new SmartAlbum(name, query);
+        register(album);
+        evaluateAll(album);
+        return album;
+    }
+
+    /**
+     * Deletes a smart album. Its photos are not affected.
+     *
+     * @param album the smart album to delete
+     */
+    public synchronized void remove(SmartAlbum album) {
+        smartAlbums.remove(album);
+        byCaption.remove(album);
+        byDate.remove(album);
+        for (List<SmartAlbum> list : byTagName.values()) {
+            list.remove(album);
+        }
+    }
+
+    public synchronized List<SmartAlbum> getSmartAlbums() {
+        return Collections.unmodifiableList(new ArrayList<>(smartAlbums));
+    }
+
+    /**
+     * Returns the photos currently in a smart album.
+     *
+     * @param album the smart album
+     * @return its photos in id order
+     */
+    public synchronized List<Photo> getPhotos(SmartAlbum album) {
+        BitSet members = album.members();
+        List<Photo> result = new ArrayList<>(members.cardinality());
+        for (int id = members.nextSetBit(0); id >= 0; id = members.nextSetBit(id + 1)) {
+            result.add(photosById.get(id));
+        }
+        return result;
+    }
+
+    /**
+     * Writes the smart album definitions to a file.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public synchronized void save(File file) throws IOException {
+        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
+            oos.writeObject(new ArrayList<>(smartAlbums));
+        }
+    }
+
+    /**
+     * Replaces the smart album definitions with those in a file. Call
+     * {@link #rebuild(List)} afterwards to compute their contents.
+     *
+     * @param file the file to read; nothing happens if it does not exist
+     * @throws IOException if the file cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized void load(File file) throws IOException {
+        if (!file.exists()) return;
+        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            List<SmartAlbum> loaded = (List<SmartAlbum>) ois.readObject();
+            smartAlbums.clear();
+            byCaption.clear();
+            byDate.clear();
+            byTagName.clear();
+            for (SmartAlbum s : loaded) {
+                register(s);
+            }
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Not a smart album file: " + e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public synchronized void onTagAdded(Photo photo, Tag tag) {
+        reevaluate(photo, byTagName.get(tag.getName()));
+    }
+
+    @Override
+    public synchronized void onTagRemoved(Photo photo, Tag tag) {
+        reevaluate(photo, byTagName.get(tag.getName()));
+    }
+
+    @Override
+    public synchronized void onCaptionChanged(Photo photo, String oldCaption) {
+        reevaluate(photo, byCaption);
+    }
+
+    @Override
+    public synchronized void onDateChanged(Photo photo, long oldMillis) {
+        reevaluate(photo, byDate);
+    }
+
+    @Override
+    public synchronized void onPhotoAdded(Album album, Photo photo) {
+        long start = System.nanoTime();
+        int id = idFor(photo);
+        albumCounts[id]++;
+        photosById.set(id, photo);
+        for (SmartAlbum s : smartAlbums) {
+            s.members().set(id, s.getQuery().matches(photo));
+        }
+        Metrics.SMART_ALBUM_UPDATE.recordSince(start);
+    }
+
+    @Override
+    public synchronized void onPhotoRemoved(Album album, Photo photo) {
+        Integer id = photoIds.get(photo.getFilePath());
+        if (id == null || albumCounts[id] == 0) return;
+
+        if (--albumCounts[id] == 0) {
+            for (SmartAlbum s : smartAlbums) {
+                s.members().clear(id);
+            }
+            photoIds.remove(photo.getFilePath());
+            photosById.set(id, null);
+            freeIds.set(id);
+        }
+    }
+
+    @Override
+    public synchronized void onAlbumRemoved(Album album) {
+        for (Photo p : album.getPhotos()) {
+            onPhotoRemoved(album, p);
+        }
+    }
+
+    private void register(SmartAlbum album) {
+        smartAlbums.add(album);
+        PhotoQuery query = album.getQuery();
+        if (query.dependsOnCaption()) byCaption.add(album);
+        if (query.dependsOnDate()) byDate.add(album);
+        for (String tagName : query.getTagNames()) {
+            byTagName.computeIfAbsent(tagName, k -> new ArrayList<>()).add(album);
+        }
+    }
+
+    private void reevaluate(Photo photo, List<SmartAlbum> affected) {
+        if (affected == null || affected.isEmpty()) return;
+        Integer id = photoIds.get(photo.getFilePath());
+        if (id == null || albumCounts[id] == 0) return;
+
+        long start = System.nanoTime();
+        for (SmartAlbum s : affected) {
+            s.members().set(id, s.getQuery().matches(photo));
+        }
+        Metrics.SMART_ALBUM_UPDATE.recordSince(start);
+    }
+
+    private void evaluateAll(SmartAlbum album) {
+        BitSet members = album.members();
+        members.clear();
+        for (int id = 0; id < photosById.size(); id++) {
+            if (albumCounts[id] > 0 && album.getQuery().matches(photosById.get(id))) {
+                members.set(id);
+            }
+        }
+    }
+
+    private int idFor(Photo photo) {
+        Integer id = photoIds.get(photo.getFilePath());
+        if (id != null) return id;
+
+        int next = freeIds.nextSetBit(0);
+        if (next >= 0) {
+            freeIds.clear(next);
+            photosById.set(next, photo);
+        } else {
+            next = photosById.size();
+            photosById.add(photo);
+            if (next == albumCounts.length) {
+                albumCounts = Arrays.copyOf(albumCounts, next * 2);
+            }
+        }
+        photoIds.put(photo.getFilePath(), next);
+        return next;
+    }
+}
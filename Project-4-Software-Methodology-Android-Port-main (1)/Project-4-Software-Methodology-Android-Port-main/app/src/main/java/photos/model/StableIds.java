@@ -0,0 +1,35 @@
+package photos.model;
+
+/**
+ * Derives stable 64-bit identifiers from the natural keys of model objects.
+ *
+ * <p>Albums are identified by name and photos by file path, so the same
+ * object always maps to the same id across snapshots and app restarts.
+ * This lets list adapters use stable ids without adding an id field to
+ * the serialized model.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class StableIds {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private StableIds() {}
+
+    /**
+     * Returns a 64-bit FNV-1a hash of the given key.
+     *
+     * @param key the natural key of the object
+     * @return the stable id for that key
+     */
+    public static long of(String key) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+}
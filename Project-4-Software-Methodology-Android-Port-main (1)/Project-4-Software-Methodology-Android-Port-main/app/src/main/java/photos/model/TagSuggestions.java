@@ -0,0 +1,270 @@
+package photos.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Suggests tag values by prefix, most used first.
+ *
+ * <p>Values of each tag type are kept in a prefix trie keyed by the
+ * lower-cased value. Every trie node caches the {@value #TOP_K} most used
+ * values below it, so a lookup is a walk down the prefix plus a copy of
+ * that cache, independent of how many values share the prefix.</p>
+ *
+ * <p>A value's usage count is the number of photo objects in the library
+ * that carry it. Tags live on photo objects, and albums read from disk
+ * hold separate objects for the same file, so photos are tracked by
+ * identity rather than by path; each object's tags are counted while it
+ * is in at least one album. Counts are maintained from
+ * {@link LibraryEvents}: tagging a photo that is in an album, or adding a
+ * tagged photo to the library, only touches the nodes on that value's
+ * path.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class TagSuggestions implements LibraryListener {
+
+    /** Number of suggestions cached per trie node. */
+    static final int TOP_K = 8;
+
+    private static final Comparator<Node> BY_USAGE = (a, b) -> {
+        int c = Integer.compare(b.count, a.count);
+        return c != 0 ? c : a.value.compareTo(b.value);
+    };
+
+    /** One trie per tag type, keyed by tag name. */
+    private final Map<String, Node> tries = new HashMap<>();
+
+    /** Number of albums each photo object is in, keyed by identity. */
+    private final Map<Photo, Integer> albumCounts = new IdentityHashMap<>();
+
+    /**
+     * Recounts every tag value in the library. Used once after loading,
+     * when albums were read without events.
+     *
+     * @param albums all albums in the library
+     */
+    public synchronized void rebuild(List<Album> albums) {
+        tries.clear();
+        albumCounts.clear();
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                if (albumCounts.merge(p, 1, Integer::sum) == 1) {
+                    for (Tag t : p.getTags()) {
+                        adjust(t, 1);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the most used values of a tag type that start with a prefix,
+     * ignoring case.
+     *
+     * @param tagName the tag type, e.g. "person"
+     * @param prefix the text typed so far; empty for the overall top values
+     * @param limit maximum number of suggestions, at most {@value #TOP_K}
+     * @return the suggested values, most used first
+     */
+    public synchronized List<String> suggest(String tagName, String prefix, int limit) {
+        List<String> result = new ArrayList<>();
+        Node node = tries.get(tagName);
+        String key = prefix.toLowerCase(Locale.ROOT);
+        for (int i = 0; node != null && i < key.length(); i++) {
+            node = node.child(key.charAt(i));
+        }
+        if (node == null) return result;
+
+        if (node.topDirty) node.recomputeTop();
+        for (int i = 0; i < Math.min(limit, node.topSize); i++) {
+            result.add(node.top[i].value);
+        }
+        return result;
+    }
+
+    /**
+     * Returns how many photos carry a tag.
+     *
+     * @param tag the tag
+     * @return the usage count
+     */
+    public synchronized int getUsageCount(Tag tag) {
+        Node node = tries.get(tag.getName());
+        String key = tag.getValue().toLowerCase(Locale.ROOT);
+        for (int i = 0; node != null && i < key.length(); i++) {
+            node = node.child(key.charAt(i));
+        }
+        return node == null ? 0 : node.count;
+    }
+
+    @Override
+    public synchronized void onTagAdded(Photo photo, Tag tag) {
+        if (albumCounts.containsKey(photo)) adjust(tag, 1);
+    }
+
+    @Override
+    public synchronized void onTagRemoved(Photo photo, Tag tag) {
+        if (albumCounts.containsKey(photo)) adjust(tag, -1);
+    }
+
+    @Override
+    public synchronized void onPhotoAdded(Album album, Photo photo) {
+        if (albumCounts.merge(photo, 1, Integer::sum) == 1) {
+            for (Tag t : photo.getTags()) {
+                adjust(t, 1);
+            }
+        }
+    }
+
+    @Override
+    public synchronized void onPhotoRemoved(Album album, Photo photo) {
+        Integer count = albumCounts.get(photo);
+        if (count == null) return;
+        if (count > 1) {
+            albumCounts.put(photo, count - 1);
+            return;
+        }
+        albumCounts.remove(photo);
+        for (Tag t : photo.getTags()) {
+            adjust(t, -1);
+        }
+    }
+
+    @Override
+    public synchronized void onAlbumRemoved(Album album) {
+        for (Photo p : album.getPhotos()) {
+            onPhotoRemoved(album, p);
+        }
+    }
+
+    /** Changes a value's usage count and refreshes the caches on its path. */
+    private void adjust(Tag tag, int delta) {
+        Node root = tries.computeIfAbsent(tag.getName(), k -> new Node());
+        String key = tag.getValue().toLowerCase(Locale.ROOT);
+
+        Node[] path = new Node[key.length() + 1];
+        path[0] = root;
+        Node node = root;
+        for (int i = 0; i < key.length(); i++) {
+            node = node.childOrCreate(key.charAt(i));
+            path[i + 1] = node;
+        }
+
+        node.count = Math.max(0, node.count + delta);
+        if (node.value == null || node.count == delta) node.value = tag.getValue();
+
+        for (Node n : path) {
+            n.update(node, delta > 0);
+        }
+    }
+
+    /** A trie node; children are kept in arrays sorted by character. */
+    private static final class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_NODES = new Node[0];
+
+        private char[] keys = NO_KEYS;
+        private Node[] children = NO_NODES;
+
+        /** Value ending at this node, as first spelled, or null. */
+        private String value;
+
+        /** Number of photos carrying the value ending here. */
+        private int count;
+
+        /** Most used values in this subtree, best first; grows up to TOP_K. */
+        private Node[] top = NO_NODES;
+        private int topSize;
+
+        /** True if a value left the cache and it must be recomputed. */
+        private boolean topDirty;
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        Node childOrCreate(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            if (i >= 0) return children[i];
+
+            int at = -i - 1;
+            Node child = new Node();
+            char[] newKeys = new char[keys.length + 1];
+            Node[] newChildren = new Node[children.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, at);
+            System.arraycopy(children, 0, newChildren, 0, at);
+            newKeys[at] = c;
+            newChildren[at] = child;
+            System.arraycopy(keys, at, newKeys, at + 1, keys.length - at);
+            System.arraycopy(children, at, newChildren, at + 1, children.length - at);
+            keys = newKeys;
+            children = newChildren;
+            return child;
+        }
+
+        /** Updates the cached top values after the count of a value below changed. */
+        void update(Node changed, boolean increased) {
+            if (topDirty) return;
+
+            int index = -1;
+            for (int i = 0; i < topSize; i++) {
+                if (top[i] == changed) index = i;
+            }
+
+            if (index >= 0 && changed.count == 0) {
+                System.arraycopy(top, index + 1, top, index, topSize - index - 1);
+                top[--topSize] = null;
+                // A value outside the full cache may now belong in it
+                if (topSize == TOP_K - 1) topDirty = true;
+            } else if (index >= 0) {
+                Arrays.sort(top, 0, topSize, BY_USAGE);
+                // A value outside the full cache may now outrank one that
+                // dropped to the last place
+                if (!increased && topSize == TOP_K && top[TOP_K - 1] == changed) {
+                    topDirty = true;
+                }
+            } else if (changed.count > 0) {
+                if (topSize < TOP_K) {
+                    if (topSize == top.length) {
+                        top = Arrays.copyOf(top, Math.min(TOP_K, Math.max(1, topSize * 2)));
+                    }
+                    top[topSize++] = changed;
+                } else if (BY_USAGE.compare(changed, top[TOP_K - 1]) < 0) {
+                    top[TOP_K - 1] = changed;
+                } else {
+                    return;
+                }
+                Arrays.sort(top, 0, topSize, BY_USAGE);
+            }
+        }
+
+        /** Rebuilds the cache from the whole subtree. */
+        void recomputeTop() {
+            List<Node> values = new ArrayList<>();
+            collect(this, values);
+            values.sort(BY_USAGE);
+            topSize = Math.min(TOP_K, values.size());
+            top = new Node[topSize];
+            for (int i = 0; i < topSize; i++) {
+                top[i] = values.get(i);
+            }
+            topDirty = false;
+        }
+
+        private static void collect(Node node, List<Node> out) {
+            if (node.count > 0) out.add(node);
+            for (Node child : node.children) {
+                collect(child, out);
+            }
+        }
+    }
+}
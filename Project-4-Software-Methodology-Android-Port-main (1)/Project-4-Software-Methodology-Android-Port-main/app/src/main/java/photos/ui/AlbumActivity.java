@@ -5,30 +5,42 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.provider.OpenableColumns;
-import android.view.LayoutInflater;
-import android.view.View;
+import android.view.Menu;
+import android.view.MenuItem;
 import android.widget.*;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.recyclerview.widget.GridLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
 
 import photos.R;
+import photos.metrics.Metrics;
 import photos.model.Album;
 import photos.model.DataManager;
+import photos.model.EditLog;
 import photos.model.Photo;
+import photos.model.PhotoSnapshot;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 public class AlbumActivity extends AppCompatActivity {
 
     private TextView albumNameLabel;
-    private ListView photoListView;
+    private RecyclerView photoRecyclerView;
     private Album currentAlbum;
     private Photo selectedPhoto;
 
-    private ArrayAdapter<Photo> adapter;
+    private PhotoGridAdapter adapter;
+
+    /** Snapshots last submitted to the adapter, in album order */
+    private List<PhotoSnapshot> shownPhotos = Collections.emptyList();
+    private ThumbnailLoader thumbnailLoader;
 
     // Android file chooser launcher
     private ActivityResultLauncher<String> pickImageLauncher;
@@ -39,12 +51,23 @@ public class AlbumActivity extends AppCompatActivity {
         setContentView(R.layout.activity_album);
 
         albumNameLabel = findViewById(R.id.albumNameLabel);
-        photoListView = findViewById(R.id.photoListView);
+        photoRecyclerView = findViewById(R.id.photoRecyclerView);
 
-        // Retrieve album name from intent
+        // Retrieve album name from intent; albums may still be loading if
+        // the app was restarted straight into this screen, so bind once
+        // they are all read rather than blocking the UI thread
         String albumName = getIntent().getStringExtra("albumName");
+        albumNameLabel.setText(albumName);
+        setupImagePicker();
+
+        DataManager.getInstance().loadAsync(null).whenComplete(
+                (albums, error) -> runOnUiThread(() -> bindAlbum(albumName)));
+    }
+
+    private void bindAlbum(String albumName) {
+        if (isFinishing() || isDestroyed()) return;
+
         currentAlbum = DataManager.getInstance().getAlbumByName(albumName);
-        
         if (currentAlbum == null) {
             Toast.makeText(this, "Album not found", Toast.LENGTH_SHORT).show();
             finish();
@@ -52,46 +75,156 @@ public class AlbumActivity extends AppCompatActivity {
         }
 
         albumNameLabel.setText(currentAlbum.getName());
-
-        setupImagePicker();
-        setupListView();
+        setupPhotoGrid();
         setupButtons();
+        invalidateOptionsMenu();
     }
 
-    private void setupListView() {
-        adapter = new ArrayAdapter<Photo>(this, R.layout.item_photo, currentAlbum.getPhotos()) {
-            @Override
-            public View getView(int position, View convertView, android.view.ViewGroup parent) {
-                View view = convertView;
-                if (view == null) {
-                    view = LayoutInflater.from(getContext()).inflate(R.layout.item_photo, parent, false);
-                }
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (adapter != null) refreshPhotos();
+    }
 
-                Photo photo = getItem(position);
+    @Override
+    protected void onPause() {
+        super.onPause();
+        DataManager.getInstance().saveEdits();
+    }
 
-                ImageView thumb = view.findViewById(R.id.photoThumb);
-                TextView caption = view.findViewById(R.id.photoCaption);
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.edit_menu, menu);
+        return true;
+    }
 
-                // Use URI for the photo path
-                thumb.setImageURI(Uri.parse("file://" + photo.getFilePath()));
-                caption.setText(photo.getCaption().isEmpty() ?
-                        photo.getFileName() : photo.getCaption());
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        EditLog log = DataManager.getInstance().getEditLog();
+        // Enabled for edits in other albums too, so tapping says where they are
+        menu.findItem(R.id.action_undo).setEnabled(log.canUndo());
+        menu.findItem(R.id.action_redo).setEnabled(log.canRedo());
+        return true;
+    }
 
-                return view;
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        EditLog log = DataManager.getInstance().getEditLog();
+        int id = item.getItemId();
+        if (id != R.id.action_undo && id != R.id.action_redo) {
+            return super.onOptionsItemSelected(item);
+        }
+        if (currentAlbum == null) return true;
+
+        boolean undo = id == R.id.action_undo;
+        boolean changed = undo ? log.undo(currentAlbum) : log.redo(currentAlbum);
+        if (!changed) {
+            // Only edits made in this album, so undo never changes another one
+            Album other = undo ? log.nextUndoAlbum() : log.nextRedoAlbum();
+            if (other != null) {
+                Toast.makeText(this, "The next edit to " + (undo ? "undo" : "redo")
+                        + " was made in album " + other.getName(), Toast.LENGTH_SHORT).show();
+            }
+        } else {
+            if (selectedPhoto != null && !currentAlbum.hasPhoto(selectedPhoto)) {
+                selectedPhoto = null;
+                adapter.setSelectedId(RecyclerView.NO_ID);
             }
-        };
+            refreshPhotos();
+        }
+        return true;
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        if (thumbnailLoader != null) thumbnailLoader.shutdown();
+    }
 
-        photoListView.setAdapter(adapter);
+    private void setupPhotoGrid() {
+        int columns = getResources().getInteger(R.integer.photo_grid_columns);
+        int thumbSize = getResources().getDimensionPixelSize(R.dimen.photo_grid_thumb_size);
 
-        photoListView.setOnItemClickListener((parent, view, position, id) -> {
-            selectedPhoto = currentAlbum.getPhotos().get(position);
-            Toast.makeText(this, "Selected: " + selectedPhoto.getFileName(), Toast.LENGTH_SHORT).show();
-        });
+        thumbnailLoader = new ThumbnailLoader(thumbSize);
+        adapter = new PhotoGridAdapter(thumbnailLoader, new PhotoGridAdapter.OnPhotoClickListener() {
+            @Override
+            public void onPhotoClick(int position, PhotoSnapshot photo) {
+                int index = indexOfPhoto(photo);
+                if (index < 0) return;
+                selectedPhoto = currentAlbum.getPhotos().get(index);
+                adapter.setSelectedId(photo.getId());
+                Toast.makeText(AlbumActivity.this, "Selected: " + photo.getFileName(), Toast.LENGTH_SHORT).show();
+            }
 
-        photoListView.setOnItemLongClickListener((parent, view, position, id) -> {
-            openPhotoDisplay(position);
-            return true;
+            @Override
+            public void onPhotoLongClick(int position, PhotoSnapshot photo) {
+                int index = indexOfPhoto(photo);
+                if (index >= 0) openPhotoDisplay(index);
+            }
         });
+
+        photoRecyclerView.setLayoutManager(new GridLayoutManager(this, columns));
+        photoRecyclerView.setHasFixedSize(true);
+        photoRecyclerView.setAdapter(adapter);
+        refreshPhotos();
+    }
+
+    private void refreshPhotos() {
+        submitPhotos(PhotoSnapshot.listOf(currentAlbum.getPhotos()));
+    }
+
+    // Edits to one photo patch the submitted list rather than snapshotting
+    // the whole album; if the list no longer mirrors the album, e.g. after
+    // a file sync, the album is snapshotted again
+    private void photoAdded(Photo photo) {
+        int index = currentAlbum.getPhotos().indexOf(photo);
+        if (index < 0 || currentAlbum.getPhotoCount() != shownPhotos.size() + 1) {
+            refreshPhotos();
+            return;
+        }
+        List<PhotoSnapshot> photos = new ArrayList<>(shownPhotos);
+        photos.add(index, PhotoSnapshot.of(photo));
+        submitPhotos(photos);
+    }
+
+    private void photoRemoved(int index, Photo photo) {
+        PhotoSnapshot removed = PhotoSnapshot.of(photo);
+        if (index < 0 || index >= shownPhotos.size()
+                || !shownPhotos.get(index).isSameItem(removed)
+                || currentAlbum.getPhotoCount() != shownPhotos.size() - 1) {
+            refreshPhotos();
+            return;
+        }
+        List<PhotoSnapshot> photos = new ArrayList<>(shownPhotos);
+        photos.remove(index);
+        submitPhotos(photos);
+    }
+
+    private void photoChanged(Photo photo) {
+        int index = currentAlbum.getPhotos().indexOf(photo);
+        PhotoSnapshot changed = PhotoSnapshot.of(photo);
+        if (index < 0 || index >= shownPhotos.size() || !shownPhotos.get(index).isSameItem(changed)) {
+            refreshPhotos();
+            return;
+        }
+        List<PhotoSnapshot> photos = new ArrayList<>(shownPhotos);
+        photos.set(index, changed);
+        submitPhotos(photos);
+    }
+
+    private void submitPhotos(List<PhotoSnapshot> photos) {
+        shownPhotos = Collections.unmodifiableList(photos);
+        adapter.submitList(shownPhotos);
+    }
+
+    // The displayed list may lag the album while a diff is pending, so
+    // resolve clicks by file path rather than by adapter position
+    private int indexOfPhoto(PhotoSnapshot photo) {
+        List<Photo> photos = currentAlbum.getPhotos();
+        for (int i = 0; i < photos.size(); i++) {
+            if (photos.get(i).getFilePath().equals(photo.getFilePath())) return i;
+        }
+        return -1;
     }
 
     private void setupButtons() {
@@ -126,23 +259,27 @@ public class AlbumActivity extends AppCompatActivity {
             String filename = getFileName(uri);
             
             // Copy to internal storage
+            long start = System.nanoTime();
             File dest = new File(getFilesDir(), filename);
             InputStream in = getContentResolver().openInputStream(uri);
             FileOutputStream out = new FileOutputStream(dest);
             
             byte[] buffer = new byte[1024];
+            long copied = 0;
             int read;
             while ((read = in.read(buffer)) != -1) {
                 out.write(buffer, 0, read);
+                copied += read;
             }
             in.close();
             out.close();
+            Metrics.IMPORT_PHOTO.recordSince(start);
+            Metrics.BYTES_IMPORTED.add(copied);
 
             // Create photo object
             Photo photo = new Photo(dest.getAbsolutePath());
-            if (currentAlbum.addPhoto(photo)) {
-                adapter.notifyDataSetChanged();
-                DataManager.getInstance().saveAll();
+            if (DataManager.getInstance().getEditLog().addPhoto(currentAlbum, photo)) {
+                photoAdded(photo);
                 Toast.makeText(this, "Photo added", Toast.LENGTH_SHORT).show();
             } else {
                 Toast.makeText(this, "Photo already exists in album", Toast.LENGTH_SHORT).show();
@@ -179,10 +316,12 @@ public class AlbumActivity extends AppCompatActivity {
                 .setTitle("Remove Photo")
                 .setMessage("Are you sure you want to remove this photo?")
                 .setPositiveButton("Remove", (d, w) -> {
-                    currentAlbum.removePhoto(selectedPhoto);
+                    Photo removed = selectedPhoto;
+                    int index = currentAlbum.getPhotos().indexOf(removed);
+                    DataManager.getInstance().getEditLog().removePhoto(currentAlbum, removed);
                     selectedPhoto = null;
-                    adapter.notifyDataSetChanged();
-                    DataManager.getInstance().saveAll();
+                    adapter.setSelectedId(RecyclerView.NO_ID);
+                    photoRemoved(index, removed);
                     Toast.makeText(this, "Photo removed", Toast.LENGTH_SHORT).show();
                 })
                 .setNegativeButton("Cancel", null)
@@ -203,9 +342,9 @@ public class AlbumActivity extends AppCompatActivity {
                 .setTitle("Set Caption")
                 .setView(input)
                 .setPositiveButton("Save", (d, w) -> {
-                    selectedPhoto.setCaption(input.getText().toString());
-                    adapter.notifyDataSetChanged();
-                    DataManager.getInstance().saveAll();
+                    DataManager.getInstance().getEditLog()
+                            .setCaption(currentAlbum, selectedPhoto, input.getText().toString());
+                    photoChanged(selectedPhoto);
                     Toast.makeText(this, "Caption saved", Toast.LENGTH_SHORT).show();
                 })
                 .setNegativeButton("Cancel", null)
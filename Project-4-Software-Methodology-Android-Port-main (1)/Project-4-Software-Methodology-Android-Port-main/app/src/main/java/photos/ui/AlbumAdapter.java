@@ -5,30 +5,50 @@ import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
 import androidx.recyclerview.widget.RecyclerView;
 import photos.R;
-import photos.model.Album;
-import java.util.List;
+import photos.model.AlbumSnapshot;
 
 /**
- * Adapter for displaying albums in RecyclerView
+ * Adapter for displaying albums in RecyclerView.
+ *
+ * <p>Albums are submitted as immutable snapshots; the diff against the
+ * previous list is computed on a background thread and only changed rows
+ * are rebound.</p>
  * @author Jess
  * @author Pavel
  */
-public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHolder> {
-    
-    private List<Album> albums;
+public class AlbumAdapter extends ListAdapter<AlbumSnapshot, AlbumAdapter.AlbumViewHolder> {
+
+    private static final DiffUtil.ItemCallback<AlbumSnapshot> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<AlbumSnapshot>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull AlbumSnapshot oldItem,
+                                               @NonNull AlbumSnapshot newItem) {
+                    return oldItem.isSameItem(newItem);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull AlbumSnapshot oldItem,
+                                                  @NonNull AlbumSnapshot newItem) {
+                    return oldItem.hasSameContents(newItem);
+                }
+            };
+
     private OnAlbumClickListener onAlbumClickListener;
-    
+
     public interface OnAlbumClickListener {
-        void onAlbumClick(Album album);
+        void onAlbumClick(AlbumSnapshot album);
     }
-    
-    public AlbumAdapter(List<Album> albums, OnAlbumClickListener clickListener) {
-        this.albums = albums;
+
+    public AlbumAdapter(OnAlbumClickListener clickListener) {
+        super(DIFF_CALLBACK);
         this.onAlbumClickListener = clickListener;
+        setHasStableIds(true);
     }
-    
+
     @NonNull
     @Override
     public AlbumViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
@@ -36,40 +56,41 @@ public class AlbumAdapter extends RecyclerView.Adapter<AlbumAdapter.AlbumViewHol
                 .inflate(R.layout.item_album, parent, false);
         return new AlbumViewHolder(view);
     }
-    
+
     @Override
     public void onBindViewHolder(@NonNull AlbumViewHolder holder, int position) {
-        Album album = albums.get(position);
-        holder.bind(album);
+        holder.bind(getItem(position));
     }
-    
+
     @Override
-    public int getItemCount() {
-        return albums.size();
+    public long getItemId(int position) {
+        return getItem(position).getId();
     }
-    
+
     class AlbumViewHolder extends RecyclerView.ViewHolder {
         private TextView albumName;
         private TextView albumPhotoCount;
-        
+        private AlbumSnapshot album;
+
         public AlbumViewHolder(@NonNull View itemView) {
             super(itemView);
             albumName = itemView.findViewById(R.id.albumName);
             albumPhotoCount = itemView.findViewById(R.id.albumPhotoCount);
+
+            itemView.setOnClickListener(v -> {
+                if (onAlbumClickListener != null && album != null) {
+                    onAlbumClickListener.onAlbumClick(album);
+                }
+            });
         }
-        
-        public void bind(Album album) {
+
+        public void bind(AlbumSnapshot album) {
+            this.album = album;
             albumName.setText(album.getName());
-            
+
             int photoCount = album.getPhotoCount();
             String countText = photoCount == 1 ? "1 photo" : photoCount + " photos";
             albumPhotoCount.setText(countText);
-            
-            itemView.setOnClickListener(v -> {
-                if (onAlbumClickListener != null) {
-                    onAlbumClickListener.onAlbumClick(album);
-                }
-            });
         }
     }
-}
\ No newline at end of file
+}
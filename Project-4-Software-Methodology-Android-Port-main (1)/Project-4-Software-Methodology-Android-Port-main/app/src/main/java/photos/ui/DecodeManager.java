@@ -0,0 +1,126 @@
+package photos.ui;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import photos.image.BitmapPool;
+import photos.image.SampleSize;
+import photos.metrics.Metrics;
+
+/**
+ * Decodes full-screen photos at the size of their view, reusing bitmaps
+ * from a shared {@link BitmapPool}.
+ *
+ * <p>All full-screen bitmaps, shown or pooled, fit in a quarter of the
+ * app's heap. If a photo does not fit at the sample size its view calls
+ * for, it is decoded at the next coarser one instead of growing the
+ * heap.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class DecodeManager {
+
+    private static final int BYTES_PER_PIXEL = 4;
+
+    private static DecodeManager instance;
+
+    private final BitmapPool<Bitmap> pool;
+
+    private DecodeManager() {
+        long budget = Runtime.getRuntime().maxMemory() / 4;
+        pool = new BitmapPool<>(new BitmapPool.Allocator<Bitmap>() {
+            @Override
+            public long capacityOf(Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+
+            @Override
+            public void recycle(Bitmap bitmap) {
+                bitmap.recycle();
+            }
+        }, budget);
+    }
+
+    /** Get the shared instance */
+    public static synchronized DecodeManager getInstance() {
+        if (instance == null) {
+            instance = new DecodeManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Decodes a photo for a view of the given size. Hand the bitmap back
+     * with {@link #release} once it is no longer shown.
+     *
+     * @param filePath the photo file
+     * @param reqWidth the view width in pixels
+     * @param reqHeight the view height in pixels
+     * @return the bitmap, or null if the file cannot be decoded
+     */
+    public Bitmap decode(String filePath, int reqWidth, int reqHeight) {
+        long start = System.nanoTime();
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        int width = options.outWidth;
+        int height = options.outHeight;
+        if (width <= 0 || height <= 0) return null;
+
+        int sampleSize = SampleSize.forFit(width, height, reqWidth, reqHeight);
+        long bytes = SampleSize.decodedBytes(width, height, sampleSize, BYTES_PER_PIXEL);
+
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+
+        Bitmap reused = pool.acquire(bytes);
+        if (reused != null) {
+            options.inSampleSize = sampleSize;
+            options.inBitmap = reused;
+            try {
+                Bitmap bitmap = BitmapFactory.decodeFile(filePath, options);
+                if (bitmap != null) {
+                    Metrics.DECODE_PHOTO.recordSince(start);
+                    return bitmap;
+                }
+            } catch (IllegalArgumentException e) {
+                // The pooled bitmap cannot hold this image; allocate instead
+            }
+            options.inBitmap = null;
+            pool.release(reused);
+        }
+
+        while (!pool.reserve(bytes)) {
+            if (sampleSize >= SampleSize.MAX) return null;
+            sampleSize *= 2;
+            bytes = SampleSize.decodedBytes(width, height, sampleSize, BYTES_PER_PIXEL);
+        }
+
+        options.inSampleSize = sampleSize;
+        Bitmap bitmap = BitmapFactory.decodeFile(filePath, options);
+        if (bitmap == null) {
+            pool.cancel(bytes);
+            return null;
+        }
+        pool.allocated(bitmap, bytes);
+        Metrics.DECODE_PHOTO.recordSince(start);
+        return bitmap;
+    }
+
+    /**
+     * Returns a bitmap from {@link #decode} to the pool. It must no longer
+     * be attached to a view.
+     *
+     * @param bitmap the bitmap, or null
+     */
+    public void release(Bitmap bitmap) {
+        if (bitmap != null) pool.release(bitmap);
+    }
+
+    /** Frees every pooled bitmap, e.g. when the system is low on memory. */
+    public void trimMemory() {
+        pool.clear();
+    }
+}
@@ -9,12 +9,17 @@ import android.widget.EditText;
 import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.ContextCompat;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import photos.R;
+import photos.metrics.Metrics;
 import photos.model.Album;
+import photos.model.AlbumSnapshot;
 import photos.model.DataManager;
+import photos.model.LibrarySync;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main activity displaying all albums
@@ -29,6 +34,28 @@ public class MainActivity extends AppCompatActivity {
     private TextView emptyText;
     private Button createAlbumButton;
     private Button deleteAlbumButton;
+
+    /** True while a list update is posted for the next frame */
+    private final AtomicBoolean updatePosted = new AtomicBoolean();
+
+    private final Runnable frameUpdate = () -> {
+        updatePosted.set(false);
+        updateUI();
+    };
+
+    /** Refreshes the list as albums are read; removed in onDestroy so it cannot outlive us */
+    private final DataManager.LoadListener loadListener = new DataManager.LoadListener() {
+        @Override
+        public void onAlbumLoaded(Album album) {
+            scheduleUpdate();
+        }
+
+        @Override
+        public void onLoadComplete(List<Album> albums) {
+            scheduleUpdate();
+            syncFilesInBackground();
+        }
+    };
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -51,20 +78,26 @@ public class MainActivity extends AppCompatActivity {
         createAlbumButton.setOnClickListener(v -> showCreateAlbumDialog());
         deleteAlbumButton.setOnClickListener(v -> deleteSelectedAlbum());
         
+        // Long press the title for the metrics debug screen
+        findViewById(R.id.titleText).setOnLongClickListener(v -> {
+            showMetrics();
+            return true;
+        });
+        
+        // Load albums in the background; they appear as they are read
+        dataManager.loadAsync(loadListener);
+        
         // Update UI
         updateUI();
     }
     
     private void setupRecyclerView() {
         albumsRecyclerView.setLayoutManager(new LinearLayoutManager(this));
-        albumAdapter = new AlbumAdapter(
-            dataManager.getAlbums(),
-            this::onAlbumClick
-        );
+        albumAdapter = new AlbumAdapter(this::onAlbumClick);
         albumsRecyclerView.setAdapter(albumAdapter);
     }
     
-    private void onAlbumClick(Album album) {
+    private void onAlbumClick(AlbumSnapshot album) {
         Intent intent = new Intent(this, AlbumActivity.class);
         intent.putExtra("albumName", album.getName());
         startActivity(intent);
@@ -87,7 +120,6 @@ public class MainActivity extends AppCompatActivity {
             
             Album newAlbum = new Album(albumName);
             dataManager.addAlbum(newAlbum);
-            albumAdapter.notifyDataSetChanged();
             updateUI();
             Toast.makeText(this, "Album created", Toast.LENGTH_SHORT).show();
         });
@@ -100,9 +132,31 @@ public class MainActivity extends AppCompatActivity {
         Toast.makeText(this, "Long press an album to select it first", Toast.LENGTH_SHORT).show();
     }
     
+    private void showMetrics() {
+        new AlertDialog.Builder(this)
+                .setTitle("Metrics")
+                .setMessage(Metrics.toText())
+                .setPositiveButton("OK", null)
+                .setNeutralButton("Reset", (dialog, which) -> Metrics.reset())
+                .show();
+    }
+    
+    /**
+     * Refresh the list on the next frame. Albums can load faster than
+     * frames are drawn, and every refresh snapshots the whole library, so
+     * any number of requests before the frame share one refresh. Safe to
+     * call from loader threads.
+     */
+    private void scheduleUpdate() {
+        if (updatePosted.compareAndSet(false, true)) {
+            albumsRecyclerView.postOnAnimation(frameUpdate);
+        }
+    }
+
     private void updateUI() {
-        List<Album> albums = dataManager.getAlbums();
-        if (albums.isEmpty()) {
+        List<AlbumSnapshot> albums = dataManager.getAlbumSnapshots();
+        albumAdapter.submitList(albums);
+        if (albums.isEmpty() && dataManager.isLoaded()) {
             emptyText.setVisibility(View.VISIBLE);
             albumsRecyclerView.setVisibility(View.GONE);
         } else {
@@ -111,10 +165,37 @@ public class MainActivity extends AppCompatActivity {
         }
     }
     
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        dataManager.removeLoadListener(loadListener);
+        albumsRecyclerView.removeCallbacks(frameUpdate);
+    }
+
     @Override
     protected void onResume() {
         super.onResume();
-        albumAdapter.notifyDataSetChanged();
         updateUI();
+        // Pick up files changed in other apps while we were away
+        if (dataManager.isLoaded()) syncFilesInBackground();
+    }
+
+    /**
+     * Check photo files for outside changes without blocking the UI. Only
+     * the file checks run in the background; the albums are updated on the
+     * UI thread, where every other edit is made.
+     */
+    private void syncFilesInBackground() {
+        dataManager.syncFilesAsync(ContextCompat.getMainExecutor(this))
+                .thenAccept(this::showSyncResult);
+    }
+
+    private void showSyncResult(LibrarySync.Result result) {
+        if (!result.hasChanges() || isFinishing() || isDestroyed()) return;
+        updateUI();
+        if (!result.getMissing().isEmpty()) {
+            Toast.makeText(this, result.getMissing().size() + " photo files are missing",
+                    Toast.LENGTH_LONG).show();
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,144 @@
+package photos.ui;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+import photos.R;
+import photos.model.PhotoSnapshot;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Adapter for displaying the photos of an album in a RecyclerView grid.
+ *
+ * <p>Thumbnails are bound asynchronously through a {@link ThumbnailLoader},
+ * so only the cells on screen hold decoded bitmaps.</p>
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoGridAdapter extends ListAdapter<PhotoSnapshot, PhotoGridAdapter.PhotoViewHolder> {
+
+    private static final DiffUtil.ItemCallback<PhotoSnapshot> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<PhotoSnapshot>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull PhotoSnapshot oldItem,
+                                               @NonNull PhotoSnapshot newItem) {
+                    return oldItem.isSameItem(newItem);
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull PhotoSnapshot oldItem,
+                                                  @NonNull PhotoSnapshot newItem) {
+                    return oldItem.hasSameContents(newItem);
+                }
+            };
+
+    private final ThumbnailLoader thumbnailLoader;
+    private final OnPhotoClickListener onPhotoClickListener;
+    private long selectedId = RecyclerView.NO_ID;
+
+    /** Position of each photo in the current list by stable id, for selection changes */
+    private final Map<Long, Integer> positions = new HashMap<>();
+
+    public interface OnPhotoClickListener {
+        void onPhotoClick(int position, PhotoSnapshot photo);
+        void onPhotoLongClick(int position, PhotoSnapshot photo);
+    }
+
+    public PhotoGridAdapter(ThumbnailLoader thumbnailLoader, OnPhotoClickListener clickListener) {
+        super(DIFF_CALLBACK);
+        this.thumbnailLoader = thumbnailLoader;
+        this.onPhotoClickListener = clickListener;
+        setHasStableIds(true);
+    }
+
+    /**
+     * Highlights the photo with the given id, or clears the highlight.
+     *
+     * @param id the stable id of the selected photo, or {@code RecyclerView.NO_ID}
+     */
+    public void setSelectedId(long id) {
+        long previous = selectedId;
+        selectedId = id;
+        notifyItemWithId(previous);
+        if (id != previous) notifyItemWithId(id);
+    }
+
+    private void notifyItemWithId(long id) {
+        Integer position = positions.get(id);
+        if (position != null) notifyItemChanged(position);
+    }
+
+    @Override
+    public void onCurrentListChanged(@NonNull List<PhotoSnapshot> previousList,
+                                     @NonNull List<PhotoSnapshot> currentList) {
+        positions.clear();
+        for (int i = 0; i < currentList.size(); i++) {
+            positions.put(currentList.get(i).getId(), i);
+        }
+    }
+
+    @NonNull
+    @Override
+    public PhotoViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext())
+                .inflate(R.layout.item_photo, parent, false);
+        return new PhotoViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull PhotoViewHolder holder, int position) {
+        holder.bind(getItem(position));
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull PhotoViewHolder holder) {
+        super.onViewRecycled(holder);
+        // Off-screen cells must not hold a place in the decode queue
+        thumbnailLoader.cancel(holder.thumb);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return getItem(position).getId();
+    }
+
+    class PhotoViewHolder extends RecyclerView.ViewHolder {
+        private ImageView thumb;
+        private TextView caption;
+
+        public PhotoViewHolder(@NonNull View itemView) {
+            super(itemView);
+            thumb = itemView.findViewById(R.id.photoThumb);
+            caption = itemView.findViewById(R.id.photoCaption);
+
+            itemView.setOnClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (onPhotoClickListener != null && position != RecyclerView.NO_POSITION) {
+                    onPhotoClickListener.onPhotoClick(position, getItem(position));
+                }
+            });
+            itemView.setOnLongClickListener(v -> {
+                int position = getBindingAdapterPosition();
+                if (onPhotoClickListener != null && position != RecyclerView.NO_POSITION) {
+                    onPhotoClickListener.onPhotoLongClick(position, getItem(position));
+                    return true;
+                }
+                return false;
+            });
+        }
+
+        public void bind(PhotoSnapshot photo) {
+            thumbnailLoader.load(thumb, photo.getFilePath());
+            caption.setText(photo.getDisplayCaption());
+            itemView.setActivated(photo.getId() == selectedId);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package photos.ui;
+
+import android.content.Context;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.ArrayAdapter;
+import android.widget.Filter;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import photos.model.TagSuggestions;
+
+/**
+ * Drop-down adapter that completes tag values from {@link TagSuggestions}.
+ *
+ * <p>The tag type comes from another field, so suggestions follow whatever
+ * type has been entered. Lookups run on the filter's worker thread, which
+ * must not touch views, so a watcher on the UI thread copies the type into
+ * a volatile field for the filter to read.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class TagSuggestionAdapter extends ArrayAdapter<String> {
+
+    /** Maximum number of values shown in the drop-down. */
+    private static final int MAX_SUGGESTIONS = 8;
+
+    private final TagSuggestions suggestions;
+    private final Filter filter = new SuggestionFilter();
+
+    /** The normalized tag type, written on the UI thread. */
+    private volatile String type;
+
+    /**
+     * @param context the context for the drop-down rows
+     * @param suggestions the suggestion index to query
+     * @param typeField the field holding the tag type
+     */
+    public TagSuggestionAdapter(Context context, TagSuggestions suggestions, TextView typeField) {
+        super(context, android.R.layout.simple_dropdown_item_1line, new ArrayList<>());
+        this.suggestions = suggestions;
+        this.type = normalize(typeField.getText());
+        typeField.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {}
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {}
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                type = normalize(s);
+            }
+        });
+    }
+
+    private static String normalize(CharSequence text) {
+        return text.toString().trim().toLowerCase(Locale.ROOT);
+    }
+
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+
+    private class SuggestionFilter extends Filter {
+
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            String prefix = constraint == null ? "" : constraint.toString().trim();
+            List<String> values = suggestions.suggest(type, prefix, MAX_SUGGESTIONS);
+
+            FilterResults results = new FilterResults();
+            results.values = values;
+            results.count = values.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            clear();
+            if (results.values != null) addAll((List<String>) results.values);
+            notifyDataSetChanged();
+        }
+    }
+}
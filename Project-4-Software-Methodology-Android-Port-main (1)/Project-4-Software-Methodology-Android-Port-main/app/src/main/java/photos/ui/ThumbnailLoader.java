@@ -0,0 +1,135 @@
+package photos.ui;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import photos.image.SampleSize;
+import photos.metrics.Metrics;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes photo thumbnails off the main thread and keeps recently used
+ * ones in a memory cache bounded by byte size.
+ *
+ * <p>Each request is tagged on its ImageView, so a recycled view that has
+ * been rebound to another photo never receives a stale thumbnail. Binding
+ * or recycling a view also cancels its pending decode, so a fast fling
+ * through a large album only decodes the photos it stops on.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class ThumbnailLoader {
+
+    private static final int DECODE_THREADS = 2;
+
+    private final LruCache<String, Bitmap> cache;
+    private final ExecutorService executor = Executors.newFixedThreadPool(DECODE_THREADS);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final int targetSize;
+
+    /** The decode queued for each view; only touched on the main thread */
+    private final Map<ImageView, Future<?>> pending = new WeakHashMap<>();
+
+    /**
+     * Creates a loader for thumbnails of roughly the given edge length.
+     *
+     * @param targetSize the edge length in pixels of the thumbnail views
+     */
+    public ThumbnailLoader(int targetSize) {
+        this.targetSize = targetSize;
+
+        // Use an eighth of the app's heap for thumbnails
+        int cacheBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        this.cache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Binds the thumbnail for the given file to the view, decoding it in
+     * the background if it is not cached.
+     *
+     * @param view the view to show the thumbnail in
+     * @param filePath the path of the photo file
+     */
+    public void load(ImageView view, String filePath) {
+        cancel(view);
+        view.setTag(filePath);
+
+        Bitmap cached = cache.get(filePath);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageDrawable(null);
+        // A queued decode must not keep a destroyed screen's views alive
+        WeakReference<ImageView> viewRef = new WeakReference<>(view);
+        pending.put(view, executor.submit(() -> {
+            // Another request may have decoded this file while we were queued
+            Bitmap bitmap = cache.get(filePath);
+            if (bitmap == null) {
+                long start = System.nanoTime();
+                bitmap = decode(filePath);
+                if (bitmap == null) return;
+                Metrics.DECODE_THUMBNAIL.recordSince(start);
+                cache.put(filePath, bitmap);
+            }
+
+            Bitmap decoded = bitmap;
+            mainHandler.post(() -> {
+                ImageView target = viewRef.get();
+                if (target != null && filePath.equals(target.getTag())) {
+                    pending.remove(target);
+                    target.setImageBitmap(decoded);
+                }
+            });
+        }));
+    }
+
+    /**
+     * Cancels the pending decode for a view, e.g. when it is recycled. A
+     * decode that has already started still completes and is cached.
+     *
+     * @param view the view that no longer needs its thumbnail
+     */
+    public void cancel(ImageView view) {
+        Future<?> task = pending.remove(view);
+        if (task != null) task.cancel(false);
+    }
+
+    /** Stops background decoding and drops cached thumbnails. */
+    public void shutdown() {
+        executor.shutdownNow();
+        pending.clear();
+        cache.evictAll();
+    }
+
+    private Bitmap decode(String filePath) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(filePath, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        int sampleSize = SampleSize.forFill(options.outWidth, options.outHeight, targetSize, targetSize);
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(filePath, options);
+    }
+}
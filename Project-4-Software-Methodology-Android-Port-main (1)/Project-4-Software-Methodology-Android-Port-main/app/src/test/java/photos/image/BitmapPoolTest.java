@@ -0,0 +1,133 @@
+package photos.image;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link BitmapPool}, with a fake bitmap that only has a size.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class BitmapPoolTest {
+
+    private static final class FakeBitmap {
+        final long bytes;
+        boolean recycled;
+
+        FakeBitmap(long bytes) {
+            this.bytes = bytes;
+        }
+    }
+
+    private static final BitmapPool.Allocator<FakeBitmap> ALLOCATOR =
+            new BitmapPool.Allocator<FakeBitmap>() {
+                @Override
+                public long capacityOf(FakeBitmap bitmap) {
+                    return bitmap.bytes;
+                }
+
+                @Override
+                public void recycle(FakeBitmap bitmap) {
+                    bitmap.recycled = true;
+                }
+            };
+
+    private BitmapPool<FakeBitmap> pool;
+
+    @Before
+    public void setUp() {
+        pool = new BitmapPool<>(ALLOCATOR, 100);
+    }
+
+    /** Reserves and allocates a bitmap, as a decode would. */
+    private FakeBitmap allocate(long reserved, long actual) {
+        assertTrue(pool.reserve(reserved));
+        FakeBitmap bitmap = new FakeBitmap(actual);
+        pool.allocated(bitmap, reserved);
+        return bitmap;
+    }
+
+    @Test
+    public void reservingEvictsPooledBitmapsOverBudget() {
+        FakeBitmap a = allocate(60, 60);
+        allocate(40, 40);
+        pool.release(a);
+        assertEquals(60, pool.getPooledBytes());
+        assertFalse(a.recycled);
+
+        assertTrue(pool.reserve(50));
+
+        assertTrue(a.recycled);
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(90, pool.getInUseBytes());
+    }
+
+    @Test
+    public void reservingFailsWhenBitmapsInUseFillTheBudget() {
+        FakeBitmap pooled = allocate(30, 30);
+        pool.release(pooled);
+        allocate(60, 60);
+
+        assertFalse(pool.reserve(50));
+
+        // A refused reservation leaves the pool alone
+        assertFalse(pooled.recycled);
+        assertEquals(30, pool.getPooledBytes());
+        assertEquals(60, pool.getInUseBytes());
+    }
+
+    @Test
+    public void releaseEvictsWhenAllocationsOverranTheirReservations() {
+        allocate(50, 70);
+        FakeBitmap b = allocate(30, 50);
+        assertEquals(120, pool.getInUseBytes());
+
+        pool.release(b);
+
+        assertTrue(b.recycled);
+        assertEquals(0, pool.getPooledBytes());
+        assertEquals(70, pool.getInUseBytes());
+    }
+
+    @Test
+    public void trimEvictsLargestBucketFirst() {
+        FakeBitmap small = allocate(8, 8);
+        FakeBitmap large = allocate(64, 64);
+        pool.release(small);
+        pool.release(large);
+
+        pool.trimTo(10);
+
+        assertTrue(large.recycled);
+        assertFalse(small.recycled);
+        assertEquals(8, pool.getPooledBytes());
+    }
+
+    @Test
+    public void acquireReusesBitmapFromNextBucketOnly() {
+        FakeBitmap b = allocate(40, 40);
+        pool.release(b);
+
+        // 40 bytes is one bucket above 20 but two above 10
+        assertNull(pool.acquire(10));
+        assertNull(pool.acquire(41));
+        assertSame(b, pool.acquire(20));
+        assertEquals(40, pool.getInUseBytes());
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    public void cancelGivesBackReservation() {
+        assertTrue(pool.reserve(80));
+        pool.cancel(80);
+        assertEquals(0, pool.getInUseBytes());
+        assertTrue(pool.reserve(100));
+    }
+}
@@ -0,0 +1,64 @@
+package photos.image;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link SampleSize}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class SampleSizeTest {
+
+    @Test
+    public void exactFitIsNotSampled() {
+        assertEquals(1, SampleSize.forFit(1000, 800, 1000, 800));
+        assertEquals(1, SampleSize.forFill(1000, 800, 1000, 800));
+    }
+
+    @Test
+    public void exactMultipleIsSampledDownToTheView() {
+        assertEquals(2, SampleSize.forFit(2000, 1600, 1000, 800));
+        assertEquals(2, SampleSize.forFill(2000, 1600, 1000, 800));
+    }
+
+    @Test
+    public void oneBelowMultipleKeepsTheLargerSize() {
+        assertEquals(1, SampleSize.forFit(1999, 1599, 1000, 800));
+        assertEquals(1, SampleSize.forFill(1999, 1599, 1000, 800));
+    }
+
+    @Test
+    public void fitFollowsTheLongerEdge() {
+        // Width 4000 / 4 is exactly the view width; height is far smaller
+        assertEquals(4, SampleSize.forFit(4000, 1000, 1000, 1000));
+        assertEquals(8, SampleSize.forFit(8000, 1000, 1000, 1000));
+    }
+
+    @Test
+    public void fillFollowsTheShorterEdge() {
+        // Height already equals the view height, so it cannot be sampled
+        assertEquals(1, SampleSize.forFill(4000, 1000, 1000, 1000));
+        assertEquals(2, SampleSize.forFill(4000, 2000, 1000, 1000));
+    }
+
+    @Test
+    public void imageSmallerThanViewIsNotSampled() {
+        assertEquals(1, SampleSize.forFit(100, 100, 1000, 1000));
+        assertEquals(1, SampleSize.forFill(100, 100, 1000, 1000));
+    }
+
+    @Test
+    public void sampleSizeIsCapped() {
+        assertEquals(SampleSize.MAX, SampleSize.forFit(1 << 20, 1 << 20, 1, 1));
+        assertEquals(SampleSize.MAX, SampleSize.forFill(1 << 20, 1 << 20, 1, 1));
+    }
+
+    @Test
+    public void decodedBytesRoundsUp() {
+        assertEquals(1000L * 800 * 4, SampleSize.decodedBytes(1000, 800, 1, 4));
+        assertEquals(501L * 401 * 4, SampleSize.decodedBytes(1001, 801, 2, 4));
+    }
+}
@@ -0,0 +1,111 @@
+package photos.metrics;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LatencyHistogram}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class LatencyHistogramTest {
+
+    private static final int LAST_BUCKET = 487;
+
+    @After
+    public void tearDown() {
+        Metrics.setEnabled(true);
+    }
+
+    @Test
+    public void valuesBelow16HaveABucketEach() {
+        for (int v = 0; v < 16; v++) {
+            assertEquals(v, LatencyHistogram.bucketIndex(v));
+            assertEquals(v, LatencyHistogram.bucketUpperBound(v));
+        }
+        assertEquals(16, LatencyHistogram.bucketIndex(16));
+        assertEquals(16, LatencyHistogram.bucketIndex(17));
+        assertEquals(17, LatencyHistogram.bucketIndex(18));
+        assertEquals(17, LatencyHistogram.bucketUpperBound(16));
+    }
+
+    @Test
+    public void logBucketsAreContiguousUpToLongMax() {
+        for (int i = 16; i < LAST_BUCKET; i++) {
+            long upper = LatencyHistogram.bucketUpperBound(i);
+            assertEquals(i, LatencyHistogram.bucketIndex(upper));
+            assertEquals(i + 1, LatencyHistogram.bucketIndex(upper + 1));
+        }
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(LAST_BUCKET));
+    }
+
+    @Test
+    public void bucketsAreWithinAnEighthOfTheValue() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            long upper = LatencyHistogram.bucketUpperBound(LatencyHistogram.bucketIndex(value));
+            assertTrue(upper >= value);
+            assertTrue((upper - value) * 8 <= value);
+        }
+    }
+
+    @Test
+    public void largestAndNegativeValuesAreRecorded() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        h.record(-5);
+        h.record(Long.MAX_VALUE);
+
+        assertEquals(2, h.getCount());
+        assertEquals(Long.MAX_VALUE, h.getMax());
+        assertEquals(0, h.getPercentile(50));
+        assertEquals(Long.MAX_VALUE, h.getPercentile(100));
+    }
+
+    @Test
+    public void percentilesAreWithinBucketAccuracy() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        for (int i = 1; i <= 10_000; i++) {
+            h.record(i * 1000L);
+        }
+
+        assertAccurate(5_000_000L, h.getPercentile(50));
+        assertAccurate(9_000_000L, h.getPercentile(90));
+        assertAccurate(9_900_000L, h.getPercentile(99));
+        assertEquals(10_000_000L, h.getPercentile(100));
+        assertEquals(5_000_500L, h.getMean());
+    }
+
+    @Test
+    public void percentilesNeverExceedTheMax() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        assertEquals(0, h.getPercentile(50));
+
+        h.record(1000);
+        assertEquals(1000, h.getPercentile(0));
+        assertEquals(1000, h.getPercentile(50));
+        assertEquals(1000, h.getPercentile(100));
+    }
+
+    @Test
+    public void disabledMetricsRecordNothing() {
+        LatencyHistogram h = new LatencyHistogram("test");
+        Metrics.setEnabled(false);
+        h.record(1000);
+
+        assertEquals(0, h.getCount());
+        assertEquals(0, h.getMax());
+    }
+
+    private static void assertAccurate(long expected, long actual) {
+        assertTrue(actual >= expected);
+        assertTrue((actual - expected) * 8 <= expected);
+    }
+}
@@ -0,0 +1,78 @@
+package photos.metrics;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link Metrics}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class MetricsTest {
+
+    @Before
+    public void setUp() {
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.stopReporting();
+        Metrics.reset();
+    }
+
+    @Test
+    public void dumpsIncludeEveryRegisteredMetric() {
+        Metrics.SEARCH.record(2_000_000);
+        Metrics.BYTES_SAVED.add(42);
+
+        String text = Metrics.toText();
+        assertTrue(text.contains("datamanager.search count=1 mean=2.000 p50=2.000 p99=2.000 max=2.000"));
+        assertTrue(text.contains("datamanager.bytes_saved 42\n"));
+
+        String json = Metrics.toJson();
+        assertTrue(json.startsWith("{\"histograms\":{"));
+        assertTrue(json.contains("\"datamanager.search\":{\"count\":1,\"mean\":2000000,"
+                + "\"p50\":2000000,\"p90\":2000000,\"p99\":2000000,\"max\":2000000}"));
+        assertTrue(json.contains("\"datamanager.bytes_saved\":42"));
+        assertTrue(json.endsWith("}}"));
+        for (LatencyHistogram h : Metrics.getHistograms()) {
+            assertTrue(json.contains("\"" + h.getName() + "\":{\"count\":"));
+        }
+        for (Counter c : Metrics.getCounters()) {
+            assertTrue(json.contains("\"" + c.getName() + "\":"));
+        }
+    }
+
+    @Test
+    public void resetClearsEveryMetric() {
+        Metrics.SAVE_ALBUM.record(1000);
+        Metrics.SAVE_FAILURES.increment();
+
+        Metrics.reset();
+
+        for (LatencyHistogram h : Metrics.getHistograms()) {
+            assertEquals(0, h.getCount());
+            assertEquals(0, h.getMax());
+        }
+        for (Counter c : Metrics.getCounters()) {
+            assertEquals(0, c.get());
+        }
+    }
+
+    @Test
+    public void reportsPeriodically() throws InterruptedException {
+        CountDownLatch dumps = new CountDownLatch(2);
+        Metrics.startReporting(1, dump -> dumps.countDown());
+
+        assertTrue(dumps.await(5, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,166 @@
+package photos.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AlbumFile}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class AlbumFileTest {
+
+    private File dir;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("albums").toFile();
+        file = new File(dir, "trip" + AlbumFile.EXTENSION);
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    private static Album album() {
+        Album album = new Album("trip");
+        album.getPhotos().add(new Photo("/photos/a.jpg", "beach", 1000,
+                Arrays.asList(new Tag("person", "ann"), new Tag("location", "nj"))));
+        album.getPhotos().add(new Photo("/photos/b.jpg", "", 2000, Arrays.<Tag>asList()));
+        album.getPhotos().add(new Photo("/photos/c.jpg", "sunset", 3000,
+                Arrays.asList(new Tag("person", "bob"))));
+        return album;
+    }
+
+    @Test
+    public void roundTripsPhotosInOrder() throws IOException {
+        AlbumFile.write(album(), file);
+        Album read = AlbumFile.read(file);
+
+        assertEquals("trip", read.getName());
+        assertEquals(3, read.getPhotoCount());
+        Photo a = read.getPhotos().get(0);
+        assertEquals("/photos/a.jpg", a.getFilePath());
+        assertEquals("beach", a.getCaption());
+        assertEquals(1000, a.getDate().getTimeInMillis());
+        assertEquals(Arrays.asList(new Tag("person", "ann"), new Tag("location", "nj")), a.getTags());
+        assertEquals("/photos/c.jpg", read.getPhotos().get(2).getFilePath());
+        assertTrue(AlbumFile.isValid(file));
+    }
+
+    @Test
+    public void keepsPreviousGenerationAsBackup() throws IOException {
+        AlbumFile.write(new Album("trip"), file);
+        AlbumFile.write(album(), file);
+
+        File backup = new File(file.getPath() + AlbumFile.BACKUP_SUFFIX);
+        assertTrue(AlbumFile.isValid(backup));
+        assertEquals(0, AlbumFile.read(backup).getPhotoCount());
+        assertFalse(new File(file.getPath() + AlbumFile.TEMP_SUFFIX).exists());
+    }
+
+    @Test
+    public void damagedPhotoRecordOnlyLosesThatPhoto() throws IOException {
+        AlbumFile.write(album(), file);
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        // Flip a byte inside the path of the second photo
+        int at = indexOf(bytes, "/photos/b.jpg".getBytes("UTF-8"));
+        corrupt(at + 1);
+
+        assertFalse(AlbumFile.isValid(file));
+        Album read = AlbumFile.read(file);
+        assertEquals(2, read.getPhotoCount());
+        assertEquals("/photos/a.jpg", read.getPhotos().get(0).getFilePath());
+        assertEquals("/photos/c.jpg", read.getPhotos().get(1).getFilePath());
+    }
+
+    @Test
+    public void truncatedFileKeepsLeadingPhotos() throws IOException {
+        AlbumFile.write(album(), file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        assertFalse(AlbumFile.isValid(file));
+        assertEquals(2, AlbumFile.read(file).getPhotoCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void damagedNameRecordFailsTheAlbum() throws IOException {
+        AlbumFile.write(album(), file);
+        corrupt(indexOf(Files.readAllBytes(file.toPath()), "trip".getBytes("UTF-8")));
+        AlbumFile.read(file);
+    }
+
+    @Test
+    public void recoverRestoresDamagedAlbumFromBackup() throws IOException {
+        AlbumFile.write(new Album("trip"), file);
+        AlbumFile.write(album(), file);
+        corrupt((int) file.length() - 1);
+
+        assertEquals(1, AlbumFile.recover(dir));
+        assertTrue(AlbumFile.isValid(file));
+        assertEquals(0, AlbumFile.read(file).getPhotoCount());
+    }
+
+    @Test
+    public void readsVersionOneFiles() throws IOException {
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(serialized)) {
+            out.writeObject(album());
+        }
+        byte[] payload = serialized.toByteArray();
+        CRC32C crc = new CRC32C();
+        crc.update(payload, 0, payload.length);
+
+        ByteBuffer buf = ByteBuffer.allocate(18 + payload.length);
+        buf.putInt(0x50484131).putShort((short) 1).putInt(1);
+        buf.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+        Files.write(file.toPath(), buf.array());
+
+        assertTrue(AlbumFile.isValid(file));
+        assertEquals(3, AlbumFile.read(file).getPhotoCount());
+    }
+
+    private void corrupt(int position) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(position);
+            int b = raf.read();
+            raf.seek(position);
+            raf.write(b ^ 0xFF);
+        }
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) continue outer;
+            }
+            return i;
+        }
+        throw new AssertionError("not found");
+    }
+}
@@ -0,0 +1,84 @@
+package photos.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link AlbumSnapshot}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class AlbumSnapshotTest {
+
+    private static Photo photo(String path, long dateMillis) {
+        return new Photo(path, "", dateMillis, Collections.<Tag>emptyList());
+    }
+
+    @Test
+    public void idIsStableIdOfName() {
+        AlbumSnapshot snapshot = AlbumSnapshot.of(new Album("trip"));
+        assertEquals(StableIds.of("trip"), snapshot.getId());
+    }
+
+    @Test
+    public void snapshotDoesNotFollowLaterChanges() {
+        Album album = new Album("trip");
+        AlbumSnapshot before = AlbumSnapshot.of(album);
+        album.getPhotos().add(photo("a.jpg", 0));
+
+        assertEquals(0, before.getPhotoCount());
+        assertEquals(1, AlbumSnapshot.of(album).getPhotoCount());
+    }
+
+    @Test
+    public void unchangedAlbumHasSameItemAndContents() {
+        Album album = new Album("trip");
+        album.getPhotos().add(photo("a.jpg", 0));
+
+        AlbumSnapshot first = AlbumSnapshot.of(album);
+        AlbumSnapshot second = AlbumSnapshot.of(album);
+        assertTrue(first.isSameItem(second));
+        assertTrue(first.hasSameContents(second));
+    }
+
+    @Test
+    public void addedPhotoChangesContentsNotItem() {
+        Album album = new Album("trip");
+        AlbumSnapshot before = AlbumSnapshot.of(album);
+        album.getPhotos().add(photo("a.jpg", 0));
+        AlbumSnapshot after = AlbumSnapshot.of(album);
+
+        assertTrue(before.isSameItem(after));
+        assertFalse(before.hasSameContents(after));
+    }
+
+    @Test
+    public void renamedAlbumIsDifferentItem() {
+        Album album = new Album("trip");
+        AlbumSnapshot before = AlbumSnapshot.of(album);
+        album.setName("holiday");
+
+        assertFalse(before.isSameItem(AlbumSnapshot.of(album)));
+    }
+
+    @Test
+    public void listKeepsOrder() {
+        List<AlbumSnapshot> list = AlbumSnapshot.listOf(
+                Arrays.asList(new Album("b"), new Album("a")));
+        assertEquals("b", list.get(0).getName());
+        assertEquals("a", list.get(1).getName());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void listIsUnmodifiable() {
+        AlbumSnapshot.listOf(Collections.singletonList(new Album("a"))).clear();
+    }
+}
@@ -0,0 +1,157 @@
+package photos.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link EditLog}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class EditLogTest {
+
+    private EditLog log;
+    private Album trip;
+    private Album family;
+    private Photo beach;
+    private Photo dinner;
+
+    @Before
+    public void setUp() {
+        log = new EditLog(10);
+        trip = new Album("trip");
+        family = new Album("family");
+        beach = new Photo("/photos/beach.jpg", "", 0L, new ArrayList<>());
+        dinner = new Photo("/photos/dinner.jpg", "", 0L, new ArrayList<>());
+    }
+
+    @Test
+    public void undoIsLimitedToTheGivenAlbum() {
+        log.addPhoto(trip, beach);
+        log.addPhoto(family, dinner);
+
+        assertFalse(log.canUndo(trip));
+        assertFalse(log.undo(trip));
+        assertTrue(trip.hasPhoto(beach));
+
+        assertTrue(log.undo(family));
+        assertFalse(family.hasPhoto(dinner));
+        assertTrue(log.undo(trip));
+        assertFalse(trip.hasPhoto(beach));
+
+        assertFalse(log.canRedo(family));
+        assertTrue(log.redo(trip));
+        assertTrue(log.redo(family));
+    }
+
+    @Test
+    public void removingAnAlbumKeepsOtherEdits() {
+        log.addPhoto(trip, beach);
+        log.setCaption(family, dinner, "first");
+        log.setCaption(trip, beach, "sunset");
+        log.setCaption(family, dinner, "second");
+        log.undo(family);
+
+        log.removeAlbum(trip);
+
+        // The undone family edit can still be redone, and the first undone
+        assertTrue(log.canRedo(family));
+        assertTrue(log.redo(family));
+        assertEquals("second", dinner.getCaption());
+        assertTrue(log.undo(family));
+        assertTrue(log.undo(family));
+        assertEquals("", dinner.getCaption());
+        assertFalse(log.canUndo());
+    }
+
+    @Test
+    public void removedEditsAreStillSaved() {
+        log.setCaption(trip, beach, "sunset");
+        family.getPhotos().add(beach);
+
+        log.removeAlbum(trip);
+
+        // The caption is stored in every album holding the photo
+        assertEquals(1, log.unsavedAlbums(Arrays.asList(family)).size());
+        assertTrue(log.unsavedAlbums(Arrays.asList(family)).contains(family));
+    }
+
+    @Test
+    public void overflowForgetsTheOldestEditButStillSavesIt() {
+        log.addPhoto(family, dinner);
+        for (int i = 0; i < 10; i++) {
+            log.addPhoto(trip, new Photo("/photos/" + i + ".jpg", "", 0L, new ArrayList<>()));
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(log.undo());
+        }
+        assertFalse(log.canUndo());
+        assertTrue(family.hasPhoto(dinner));
+        assertTrue(log.unsavedAlbums(Arrays.asList(trip, family)).contains(family));
+    }
+
+    @Test
+    public void newEditDiscardsTheRedoHistory() {
+        log.addPhoto(trip, beach);
+        log.undo(trip);
+        assertTrue(log.canRedo(trip));
+
+        log.addPhoto(trip, dinner);
+
+        assertFalse(log.canRedo());
+        assertFalse(log.redo(trip));
+        assertFalse(trip.hasPhoto(beach));
+        assertTrue(trip.hasPhoto(dinner));
+    }
+
+    @Test
+    public void undoingARemovalRestoresThePosition() {
+        Photo hills = new Photo("/photos/hills.jpg", "", 0L, new ArrayList<>());
+        trip.getPhotos().addAll(Arrays.asList(beach, dinner, hills));
+
+        log.removePhoto(trip, dinner);
+        assertEquals(Arrays.asList(beach, hills), trip.getPhotos());
+
+        assertTrue(log.undo(trip));
+        assertEquals(Arrays.asList(beach, dinner, hills), trip.getPhotos());
+    }
+
+    @Test
+    public void markSavedClearsPendingAlbums() {
+        log.addPhoto(family, dinner);
+        for (int i = 0; i < 10; i++) {
+            log.setCaption(trip, beach, "caption " + i);
+        }
+        assertEquals(2, log.unsavedAlbums(Arrays.asList(trip, family)).size());
+
+        log.markSaved();
+        assertTrue(log.unsavedAlbums(Arrays.asList(trip, family)).isEmpty());
+
+        // Undoing a saved edit makes its album unsaved again
+        log.undo(trip);
+        assertEquals(1, log.unsavedAlbums(Arrays.asList(trip, family)).size());
+        assertTrue(log.unsavedAlbums(Arrays.asList(trip, family)).contains(trip));
+    }
+
+    @Test
+    public void namesTheAlbumOfTheNextEdit() {
+        assertNull(log.nextUndoAlbum());
+        log.addPhoto(trip, beach);
+        log.addPhoto(family, dinner);
+
+        assertTrue(log.nextUndoAlbum() == family);
+        log.undo(family);
+        assertTrue(log.nextUndoAlbum() == trip);
+        assertTrue(log.nextRedoAlbum() == family);
+    }
+}
@@ -0,0 +1,135 @@
+package photos.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibraryArchive}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class LibraryArchiveTest {
+
+    private File dir;
+    private File archive;
+    private File blobDir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("archive").toFile();
+        archive = new File(dir, "library.phla");
+        blobDir = new File(dir, "blobs");
+    }
+
+    @After
+    public void tearDown() {
+        delete(dir);
+    }
+
+    private static void delete(File f) {
+        File[] files = f.listFiles();
+        if (files != null) {
+            for (File child : files) delete(child);
+        }
+        f.delete();
+    }
+
+    private Photo photo(String name, byte[] contents) throws IOException {
+        File file = new File(dir, name);
+        Files.write(file.toPath(), contents);
+        return new Photo(file.getPath(), "caption " + name, 1000L, new ArrayList<>());
+    }
+
+    private Album library() throws IOException {
+        Album album = new Album("trip");
+        album.getPhotos().add(photo("beach.jpg", new byte[] {1, 2, 3}));
+        album.getPhotos().add(photo("copy.png", new byte[] {1, 2, 3}));
+        album.getPhotos().add(photo("hills.jpg", new byte[] {4, 5, 6, 7}));
+        return album;
+    }
+
+    @Test
+    public void storesIdenticalImagesOnce() throws IOException {
+        Album album = library();
+
+        assertEquals(2, LibraryArchive.export(Arrays.asList(album), archive));
+        long size = archive.length();
+
+        // Exporting again resumes and finds every image already stored
+        assertEquals(0, LibraryArchive.export(Arrays.asList(album), archive));
+        assertEquals(size, archive.length());
+    }
+
+    @Test
+    public void restoresImagesWithTheirExtension() throws IOException {
+        LibraryArchive.export(Arrays.asList(library()), archive);
+
+        List<Album> albums = LibraryArchive.read(archive, blobDir);
+
+        List<Photo> photos = albums.get(0).getPhotos();
+        assertEquals(2, photos.size());
+        assertTrue(photos.get(0).getFilePath().endsWith(".jpg"));
+        assertTrue(photos.get(1).getFilePath().endsWith(".jpg"));
+        assertEquals("caption hills.jpg", photos.get(1).getCaption());
+        assertTrue(new File(photos.get(1).getFilePath()).isFile());
+        assertEquals(2, blobDir.listFiles().length);
+    }
+
+    @Test
+    public void readingFiresNoLibraryEvents() throws IOException {
+        LibraryArchive.export(Arrays.asList(library()), archive);
+        int[] added = new int[1];
+        LibraryListener counter = new LibraryListener() {
+            @Override
+            public void onPhotoAdded(Album album, Photo photo) {
+                added[0]++;
+            }
+        };
+
+        LibraryEvents.addListener(counter);
+        try {
+            LibraryArchive.read(archive, blobDir);
+        } finally {
+            LibraryEvents.removeListener(counter);
+        }
+        assertEquals(0, added[0]);
+    }
+
+    @Test
+    public void captionsLongerThan64KbRoundTrip() throws IOException {
+        Album album = library();
+        StringBuilder caption = new StringBuilder();
+        while (caption.length() < 70_000) caption.append("caf\u00e9 ");
+        album.getPhotos().get(2).setCaption(caption.toString());
+
+        LibraryArchive.export(Arrays.asList(album), archive);
+        List<Album> albums = LibraryArchive.read(archive, blobDir);
+
+        assertEquals(caption.toString(), albums.get(0).getPhotos().get(1).getCaption());
+    }
+
+    @Test
+    public void damagedRestoredImageIsRestoredAgain() throws IOException {
+        LibraryArchive.export(Arrays.asList(library()), archive);
+        File hills = new File(LibraryArchive.read(archive, blobDir).get(0).getPhotos().get(1).getFilePath());
+
+        // Same length, different contents
+        Files.write(hills.toPath(), new byte[] {9, 9, 9, 9});
+        LibraryArchive.read(archive, blobDir);
+
+        assertArrayEquals(new byte[] {4, 5, 6, 7}, Files.readAllBytes(hills.toPath()));
+    }
+}
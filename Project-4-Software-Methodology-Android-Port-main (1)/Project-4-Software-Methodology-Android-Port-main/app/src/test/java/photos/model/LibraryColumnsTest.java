@@ -0,0 +1,106 @@
+package photos.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibraryColumns}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class LibraryColumnsTest {
+
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        file = File.createTempFile("columns", ".dat");
+    }
+
+    @After
+    public void tearDown() {
+        file.delete();
+    }
+
+    private static long date(int year, int month) {
+        Calendar cal = Calendar.getInstance();
+        cal.clear();
+        cal.set(year, month, 15);
+        return cal.getTimeInMillis();
+    }
+
+    private static List<Album> library() {
+        Photo shared = new Photo("/p/shared.jpg", "", date(2024, Calendar.MARCH),
+                Arrays.asList(new Tag("person", "ann")));
+        Album trip = new Album("trip");
+        trip.getPhotos().add(shared);
+        trip.getPhotos().add(new Photo("/p/a.jpg", "", date(2024, Calendar.MARCH),
+                Arrays.asList(new Tag("person", "bob"), new Tag("location", "nj"))));
+        trip.getPhotos().add(new Photo("/p/b.jpg", "", date(2024, Calendar.APRIL),
+                Collections.<Tag>emptyList()));
+        Album family = new Album("family");
+        family.getPhotos().add(shared);
+        family.getPhotos().add(new Photo("/p/c.jpg", "", date(2023, Calendar.DECEMBER),
+                Arrays.asList(new Tag("person", "ann"))));
+        return Arrays.asList(trip, family);
+    }
+
+    @Test
+    public void answersAggregateQueries() {
+        LibraryColumns columns = LibraryColumns.build(library());
+
+        assertEquals(4, columns.getPhotoCount());
+        assertEquals(2, columns.getAlbumCount());
+        assertEquals(Integer.valueOf(2), columns.countByTagValue("person").get("ann"));
+        assertEquals(Integer.valueOf(1), columns.countByTagValue("person").get("bob"));
+        assertEquals("{2023-12=1, 2024-03=2, 2024-04=1}", columns.countByMonth().toString());
+        assertEquals("{trip=3, family=2}", columns.largestAlbums(5).toString());
+        assertEquals(1, columns.untaggedPhotos().length);
+        assertEquals(1, columns.countSharedPhotos());
+    }
+
+    @Test
+    public void fileRoundTripGivesSameAnswers() throws IOException {
+        LibraryColumns built = LibraryColumns.build(library());
+        built.write(file);
+        LibraryColumns read = LibraryColumns.read(file);
+
+        assertEquals(built.getPhotoCount(), read.getPhotoCount());
+        assertEquals(built.getAlbumCount(), read.getAlbumCount());
+        for (int id = 0; id < built.getPhotoCount(); id++) {
+            assertEquals(built.getPhotoPath(id), read.getPhotoPath(id));
+        }
+        assertEquals(built.countByTagValue("person"), read.countByTagValue("person"));
+        assertEquals(built.countByMonth(), read.countByMonth());
+        assertEquals(built.largestAlbums(5), read.largestAlbums(5));
+        assertTrue(Arrays.equals(built.untaggedPhotos(), read.untaggedPhotos()));
+        assertEquals(built.countSharedPhotos(), read.countSharedPhotos());
+        assertEquals(built.countInDateRange(date(2024, 0), date(2025, 0)),
+                read.countInDateRange(date(2024, 0), date(2025, 0)));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsDamagedFile() throws IOException {
+        LibraryColumns.build(library()).write(file);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(30);
+            int b = raf.read();
+            raf.seek(30);
+            raf.write(b ^ 0xFF);
+        }
+        LibraryColumns.read(file);
+    }
+}
@@ -0,0 +1,107 @@
+package photos.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link LibrarySync}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class LibrarySyncTest {
+
+    private File dir;
+    private File image;
+    private Photo photo;
+    private List<Album> albums;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("sync").toFile();
+        image = new File(dir, "beach.jpg");
+        Files.write(image.toPath(), new byte[] {1, 2, 3});
+        photo = new Photo(image.getPath(), "", 1000L, new ArrayList<>());
+        Album album = new Album("trip");
+        album.getPhotos().add(photo);
+        albums = Arrays.asList(album, new Album("empty"));
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) f.delete();
+        }
+        dir.delete();
+    }
+
+    private LibrarySync newSync() {
+        return new LibrarySync(new File(dir, "manifest.dat"));
+    }
+
+    @Test
+    public void checkLeavesPhotosForApply() throws IOException {
+        LibrarySync sync = newSync();
+        Set<String> paths = Collections.singleton(image.getPath());
+        sync.check(paths, null);
+
+        Files.write(image.toPath(), new byte[] {4, 5, 6, 7});
+        assertTrue(image.setLastModified(5_000_000L));
+        LibrarySync.Result result = sync.check(paths, null);
+
+        assertEquals(Collections.singletonList(image.getPath()), result.getChanged());
+        assertEquals(1000L, photo.getDate().getTimeInMillis());
+        assertTrue(result.getAffectedAlbums().isEmpty());
+
+        Set<Album> affected = sync.apply(result, albums);
+
+        assertEquals(5_000_000L, photo.getDate().getTimeInMillis());
+        assertEquals(Collections.singleton(albums.get(0)), affected);
+    }
+
+    @Test
+    public void manifestCarriesOverToNextSync() throws IOException {
+        Set<String> paths = Collections.singleton(image.getPath());
+        LibrarySync first = newSync();
+        first.check(paths, null);
+        first.save();
+
+        LibrarySync.Result result = newSync().check(paths, null);
+
+        assertEquals(1, result.getFilesChecked());
+        assertEquals(0, result.getFilesHashed());
+        assertFalse(result.hasChanges());
+    }
+
+    @Test
+    public void discardedChangesAreFoundAgain() throws IOException {
+        Set<String> paths = Collections.singleton(image.getPath());
+        LibrarySync sync = newSync();
+        sync.check(paths, null);
+        sync.save();
+
+        Files.write(image.toPath(), new byte[] {4, 5, 6, 7});
+        assertTrue(image.setLastModified(5_000_000L));
+        assertTrue(sync.check(paths, null).hasChanges());
+
+        // As when the albums holding the photo could not be saved
+        sync.discard();
+
+        assertEquals(Collections.singletonList(image.getPath()), sync.check(paths, null).getChanged());
+    }
+}
@@ -0,0 +1,172 @@
+package photos.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for {@link PhotoBatch}. Albums are saved under the working
+ * directory's {@code data/albums}, like the app's, and removed afterwards.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoBatchTest {
+
+    private static final Tag ROME = new Tag("location", "Rome");
+
+    private DataManager dataManager;
+    private final List<Album> attached = new ArrayList<>();
+    private Album holiday;
+    private Album archive;
+    private Photo beach;
+    private Photo forum;
+
+    @Before
+    public void setUp() {
+        dataManager = DataManager.getInstance();
+        holiday = attach("batch-holiday");
+        archive = attach("batch-archive");
+        beach = new Photo("/photos/beach.jpg", "", 0L, new ArrayList<>());
+        forum = new Photo("/photos/forum.jpg", "", 0L, new ArrayList<>());
+        holiday.getPhotos().addAll(Arrays.asList(beach, forum));
+    }
+
+    @After
+    public void tearDown() {
+        for (Album a : attached) {
+            dataManager.detachAlbum(a);
+            dataManager.deleteAlbumFile(a);
+        }
+        Album created = dataManager.getAlbumByName("batch-new");
+        if (created != null) dataManager.detachAlbum(created);
+        dataManager.deleteAlbumFile(new Album("batch-new"));
+    }
+
+    private Album attach(String name) {
+        Album album = new Album(name);
+        dataManager.attachAlbum(album);
+        attached.add(album);
+        return album;
+    }
+
+    private static File fileOf(Album album) {
+        return new File("data/albums/" + album.getName() + AlbumFile.EXTENSION);
+    }
+
+    @Test
+    public void copyAddsAndSavesTarget() throws IOException {
+        dataManager.newBatch().copy(Arrays.asList(beach), archive).commit();
+
+        assertTrue(archive.hasPhoto(beach));
+        assertTrue(holiday.hasPhoto(beach));
+        assertTrue(fileOf(archive).isFile());
+        assertFalse(fileOf(holiday).isFile());
+    }
+
+    @Test
+    public void moveRemovesFromSource() throws IOException {
+        dataManager.newBatch().move(Arrays.asList(beach), holiday, archive).commit();
+
+        assertTrue(archive.hasPhoto(beach));
+        assertFalse(holiday.hasPhoto(beach));
+        assertEquals(1, AlbumFile.read(fileOf(holiday)).getPhotoCount());
+        assertEquals(1, AlbumFile.read(fileOf(archive)).getPhotoCount());
+    }
+
+    @Test
+    public void deleteRemovesPhotos() throws IOException {
+        dataManager.newBatch().delete(Arrays.asList(beach, forum), holiday).commit();
+
+        assertEquals(0, holiday.getPhotoCount());
+        assertEquals(0, AlbumFile.read(fileOf(holiday)).getPhotoCount());
+    }
+
+    @Test
+    public void tagAndUntagSaveEveryAlbumHoldingThePhoto() throws IOException {
+        archive.getPhotos().add(beach);
+
+        dataManager.newBatch().tag(Arrays.asList(beach), ROME).commit();
+
+        assertTrue(beach.hasTag(ROME));
+        assertTrue(AlbumFile.read(fileOf(archive)).getPhotos().get(0).hasTag(ROME));
+        assertTrue(fileOf(holiday).isFile());
+
+        dataManager.newBatch().untag(Arrays.asList(beach), ROME).commit();
+
+        assertFalse(beach.hasTag(ROME));
+        assertFalse(AlbumFile.read(fileOf(archive)).getPhotos().get(0).hasTag(ROME));
+    }
+
+    @Test
+    public void failingOperationRollsBackEarlierOnes() throws IOException {
+        PhotoBatch batch = dataManager.newBatch()
+                .move(Arrays.asList(beach), holiday, archive)
+                .tag(Arrays.asList(forum), ROME)
+                .createAlbum(holiday.getName(), Collections.<Photo>emptyList());
+
+        try {
+            batch.commit();
+            fail("Expected the duplicate album to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        assertEquals(Arrays.asList(beach, forum), holiday.getPhotos());
+        assertEquals(0, archive.getPhotoCount());
+        assertFalse(forum.hasTag(ROME));
+        assertFalse(fileOf(holiday).isFile());
+        assertFalse(fileOf(archive).isFile());
+    }
+
+    @Test
+    public void failedSaveRollsBackAndRestoresWrittenFiles() throws IOException {
+        dataManager.newBatch().copy(Arrays.asList(forum), archive).commit();
+        // The name points into a directory that does not exist, so its save fails
+        Album unwritable = attach("missing-dir/batch");
+
+        try {
+            dataManager.newBatch()
+                    .copy(Arrays.asList(beach), archive)
+                    .createAlbum("batch-new", Arrays.asList(forum))
+                    .copy(Arrays.asList(beach), unwritable)
+                    .commit();
+            fail("Expected the save to fail");
+        } catch (IOException e) {
+            // expected
+        }
+
+        assertEquals(Arrays.asList(forum), archive.getPhotos());
+        assertEquals(Arrays.asList(forum), AlbumFile.read(fileOf(archive)).getPhotos());
+        assertNull(dataManager.getAlbumByName("batch-new"));
+        assertFalse(new File("data/albums/batch-new" + AlbumFile.EXTENSION).exists());
+        assertEquals(0, unwritable.getPhotoCount());
+    }
+
+    @Test
+    public void batchCommitsOnlyOnce() throws IOException {
+        PhotoBatch batch = dataManager.newBatch().copy(Arrays.asList(beach), archive);
+        batch.commit();
+
+        try {
+            batch.commit();
+            fail("Expected a second commit to fail");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(1, archive.getPhotoCount());
+    }
+}
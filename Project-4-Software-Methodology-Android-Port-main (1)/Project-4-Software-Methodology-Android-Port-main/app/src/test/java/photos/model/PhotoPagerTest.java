@@ -0,0 +1,93 @@
+package photos.model;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PhotoPager}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoPagerTest {
+
+    private static Album album(int photos) {
+        Album album = new Album("big");
+        for (int i = 0; i < photos; i++) {
+            album.getPhotos().add(new Photo("/photos/" + i + ".jpg", "caption " + i, i * 1000L,
+                    Collections.singletonList(new Tag("person", "p" + (i % 7)))));
+        }
+        return album;
+    }
+
+    /** Counts the pages a source is asked for. */
+    private static final class CountingSource implements PhotoPager.PageSource {
+        private final PhotoPager.PageSource source;
+        int loads;
+
+        CountingSource(Album album) {
+            this.source = PhotoPager.albumSource(album);
+        }
+
+        @Override
+        public int size() {
+            return source.size();
+        }
+
+        @Override
+        public List<Photo> loadPage(int offset, int limit) {
+            loads++;
+            return source.loadPage(offset, limit);
+        }
+    }
+
+    @Test
+    public void loadsOnlyTouchedPages() {
+        Album album = album(1000);
+        CountingSource source = new CountingSource(album);
+        PhotoPager pager = new PhotoPager(source, 50, 3);
+
+        assertEquals(1000, pager.size());
+        assertEquals(0, pager.getResidentPageCount());
+        assertTrue(pager.get(777) == album.getPhotos().get(777));
+        assertTrue(pager.get(760) == album.getPhotos().get(760));
+        assertEquals(1, pager.getResidentPageCount());
+        assertEquals(1, source.loads);
+    }
+
+    @Test
+    public void keepsAtMostMaxPages() {
+        CountingSource source = new CountingSource(album(1000));
+        PhotoPager pager = new PhotoPager(source, 50, 3);
+
+        for (int i = 0; i < 1000; i += 50) {
+            assertEquals("/photos/" + i + ".jpg", pager.get(i).getFilePath());
+        }
+        assertEquals(3, pager.getResidentPageCount());
+
+        // The first page was evicted and is loaded again
+        assertEquals("/photos/0.jpg", pager.get(0).getFilePath());
+        assertEquals(21, source.loads);
+    }
+
+    @Test
+    public void reloadsShortPageAfterSourceGrew() {
+        Album album = album(9);
+        PhotoPager pager = new PhotoPager(PhotoPager.albumSource(album), 4, 2);
+        assertEquals("/photos/8.jpg", pager.get(8).getFilePath());
+
+        album.getPhotos().add(new Photo("/photos/new.jpg", "", 0, Collections.<Tag>emptyList()));
+        assertEquals(10, pager.size());
+        assertEquals("/photos/new.jpg", pager.get(9).getFilePath());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void rejectsIndexPastEnd() {
+        new PhotoPager(PhotoPager.albumSource(album(3)), 4, 2).get(3);
+    }
+}
@@ -0,0 +1,75 @@
+package photos.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PhotoSnapshot}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoSnapshotTest {
+
+    private static Photo photo(String path, String caption, long dateMillis, Tag... tags) {
+        return new Photo(path, caption, dateMillis, Arrays.asList(tags));
+    }
+
+    @Test
+    public void idIsStableIdOfPath() {
+        PhotoSnapshot snapshot = PhotoSnapshot.of(photo("/photos/a.jpg", "", 0));
+        assertEquals(StableIds.of("/photos/a.jpg"), snapshot.getId());
+        assertEquals("a.jpg", snapshot.getFileName());
+    }
+
+    @Test
+    public void equalPhotosHaveSameItemAndContents() {
+        PhotoSnapshot first = PhotoSnapshot.of(photo("a.jpg", "beach", 1000, new Tag("person", "ann")));
+        PhotoSnapshot second = PhotoSnapshot.of(photo("a.jpg", "beach", 1000, new Tag("person", "ann")));
+        assertTrue(first.isSameItem(second));
+        assertTrue(first.hasSameContents(second));
+    }
+
+    @Test
+    public void differentPathsAreDifferentItems() {
+        PhotoSnapshot a = PhotoSnapshot.of(photo("a.jpg", "", 0));
+        PhotoSnapshot b = PhotoSnapshot.of(photo("b.jpg", "", 0));
+        assertFalse(a.isSameItem(b));
+    }
+
+    @Test
+    public void captionDateAndTagsAreContents() {
+        PhotoSnapshot base = PhotoSnapshot.of(photo("a.jpg", "beach", 1000));
+        assertFalse(base.hasSameContents(PhotoSnapshot.of(photo("a.jpg", "sea", 1000))));
+        assertFalse(base.hasSameContents(PhotoSnapshot.of(photo("a.jpg", "beach", 2000))));
+        assertFalse(base.hasSameContents(
+                PhotoSnapshot.of(photo("a.jpg", "beach", 1000, new Tag("person", "ann")))));
+    }
+
+    @Test
+    public void snapshotDoesNotFollowLaterChanges() {
+        Photo photo = photo("a.jpg", "beach", 1000);
+        PhotoSnapshot before = PhotoSnapshot.of(photo);
+        photo.getTags().add(new Tag("location", "nj"));
+
+        assertEquals("No tags", before.getTags());
+        assertFalse(before.hasSameContents(PhotoSnapshot.of(photo)));
+    }
+
+    @Test
+    public void displayCaptionFallsBackToFileName() {
+        assertEquals("a.jpg", PhotoSnapshot.of(photo("/x/a.jpg", "", 0)).getDisplayCaption());
+        assertEquals("beach", PhotoSnapshot.of(photo("/x/a.jpg", "beach", 0)).getDisplayCaption());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void listIsUnmodifiable() {
+        PhotoSnapshot.listOf(Collections.singletonList(photo("a.jpg", "", 0))).clear();
+    }
+}
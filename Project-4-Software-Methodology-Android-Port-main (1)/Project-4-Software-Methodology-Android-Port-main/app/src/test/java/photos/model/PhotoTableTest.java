@@ -0,0 +1,48 @@
+package photos.model;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link PhotoTable}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class PhotoTableTest {
+
+    private static Album album(String name, int from, int to) {
+        Album album = new Album(name);
+        for (int i = from; i < to; i++) {
+            album.getPhotos().add(new Photo("/photos/" + i + ".jpg", i % 2 == 0 ? "" : "caption " + i,
+                    i * 1000L, Arrays.asList(new Tag("person", "p" + (i % 3)))));
+        }
+        return album;
+    }
+
+    @Test
+    public void buildsFromAlbumsWithoutDuplicates() {
+        PhotoTable table = PhotoTable.build(Arrays.asList(album("a", 0, 3000), album("b", 2000, 5000)));
+
+        assertEquals(5000, table.size());
+        PhotoTable.Row row = table.row().moveTo(table.indexOf("/photos/2001.jpg"));
+        assertEquals("/photos/2001.jpg", row.getFilePath());
+        assertEquals("caption 2001", row.getCaption());
+        assertEquals(2_001_000L, row.getDateMillis());
+        assertTrue(row.hasTag(new Tag("person", "p0")));
+    }
+
+    @Test
+    public void unknownPathsAreNotFound() {
+        PhotoTable table = new PhotoTable();
+        table.add(new Photo("/photos/a.jpg", "", 0L, Arrays.<Tag>asList()));
+
+        assertEquals(0, table.indexOf("/photos/a.jpg"));
+        assertEquals(-1, table.indexOf("/photos/b.jpg"));
+        assertEquals(-1, table.indexOf("/photos/a.jp"));
+    }
+}
@@ -0,0 +1,186 @@
+package photos.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SmartAlbums}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class SmartAlbumsTest {
+
+    private static final Tag TAG = new Tag("person", "ann");
+
+    private SmartAlbums smartAlbums;
+
+    @Before
+    public void setUp() {
+        smartAlbums = new SmartAlbums();
+        LibraryEvents.addListener(smartAlbums);
+    }
+
+    @After
+    public void tearDown() {
+        LibraryEvents.removeListener(smartAlbums);
+    }
+
+    private static Photo photo(String name) {
+        return new Photo("/photos/" + name + ".jpg", "", 0L, new ArrayList<>(Collections.singletonList(TAG)));
+    }
+
+    @Test
+    public void rebuildsLibraryLargerThanInitialIds() {
+        Album album = new Album("big");
+        for (int i = 0; i < 200; i++) {
+            album.getPhotos().add(photo("p" + i));
+        }
+        SmartAlbum smart = smartAlbums.create("ann", PhotoQuery.allOf(TAG));
+
+        smartAlbums.rebuild(Collections.singletonList(album));
+
+        assertEquals(200, smart.getPhotoCount());
+    }
+
+    @Test
+    public void reusesIdOfPhotoThatLeftLibrary() {
+        Album album = new Album("a");
+        Photo first = photo("first");
+        Photo second = photo("second");
+        album.addPhoto(first);
+        album.addPhoto(second);
+        SmartAlbum smart = smartAlbums.create("ann", PhotoQuery.allOf(TAG));
+
+        album.removePhoto(first);
+        assertEquals(1, smart.getPhotoCount());
+
+        Photo third = photo("third");
+        album.addPhoto(third);
+        List<Photo> photos = smartAlbums.getPhotos(smart);
+
+        // The new photo takes the freed id 0, ahead of the second photo
+        assertEquals(2, photos.size());
+        assertTrue(photos.get(0) == third);
+        assertTrue(photos.get(1) == second);
+    }
+
+    @Test
+    public void keepsIdWhilePhotoIsInAnotherAlbum() {
+        Album a = new Album("a");
+        Album b = new Album("b");
+        Photo shared = photo("shared");
+        a.addPhoto(shared);
+        b.addPhoto(shared);
+        SmartAlbum smart = smartAlbums.create("ann", PhotoQuery.allOf(TAG));
+
+        a.removePhoto(shared);
+        assertEquals(1, smart.getPhotoCount());
+
+        b.removePhoto(shared);
+        assertEquals(0, smart.getPhotoCount());
+        assertFalse(smartAlbums.getPhotos(smart).contains(shared));
+    }
+
+    @Test
+    public void tagChangesUpdateMembership() {
+        Album album = new Album("a");
+        Photo p = new Photo("/photos/p.jpg", "", 0L, new ArrayList<>());
+        album.addPhoto(p);
+        SmartAlbum smart = smartAlbums.create("ann", PhotoQuery.allOf(TAG));
+        assertEquals(0, smart.getPhotoCount());
+
+        p.addTag(TAG);
+        assertEquals(1, smart.getPhotoCount());
+        assertTrue(smartAlbums.getPhotos(smart).get(0) == p);
+
+        p.removeTag(TAG);
+        assertEquals(0, smart.getPhotoCount());
+    }
+
+    @Test
+    public void captionChangesUpdateMembership() {
+        Album album = new Album("a");
+        Photo p = photo("p");
+        album.addPhoto(p);
+        SmartAlbum smart = smartAlbums.create("beach", PhotoQuery.allOf().withCaptionContaining("Beach"));
+        assertEquals(0, smart.getPhotoCount());
+
+        p.setCaption("On the beach");
+        assertEquals(1, smart.getPhotoCount());
+
+        p.setCaption("Indoors");
+        assertEquals(0, smart.getPhotoCount());
+    }
+
+    @Test
+    public void dateChangesUpdateMembership() {
+        Album album = new Album("a");
+        Photo p = photo("p");
+        album.addPhoto(p);
+        SmartAlbum smart = smartAlbums.create("range", PhotoQuery.allOf(TAG).withDateRange(1000L, 2000L));
+        assertEquals(0, smart.getPhotoCount());
+
+        p.setDateMillis(1500L);
+        assertEquals(1, smart.getPhotoCount());
+
+        p.setDateMillis(3000L);
+        assertEquals(0, smart.getPhotoCount());
+    }
+
+    @Test
+    public void allOfNeedsEveryTagAndAnyOfNeedsOne() {
+        Tag rome = new Tag("location", "Rome");
+        Album album = new Album("a");
+        Photo both = photo("both");
+        both.addTag(rome);
+        Photo annOnly = photo("annOnly");
+        Photo neither = new Photo("/photos/neither.jpg", "", 0L, new ArrayList<>());
+        album.addPhoto(both);
+        album.addPhoto(annOnly);
+        album.addPhoto(neither);
+
+        SmartAlbum all = smartAlbums.create("all", PhotoQuery.allOf(TAG, rome));
+        SmartAlbum any = smartAlbums.create("any", PhotoQuery.anyOf(TAG, rome));
+
+        assertEquals(1, all.getPhotoCount());
+        assertTrue(smartAlbums.getPhotos(all).get(0) == both);
+        assertEquals(2, any.getPhotoCount());
+        assertFalse(smartAlbums.getPhotos(any).contains(neither));
+
+        neither.addTag(rome);
+        assertEquals(1, all.getPhotoCount());
+        assertEquals(3, any.getPhotoCount());
+    }
+
+    @Test
+    public void withMethodsLeaveTheQueryUnchanged() {
+        PhotoQuery base = PhotoQuery.allOf(TAG);
+        PhotoQuery dated = base.withDateRange(1000L, 2000L);
+        Photo p = photo("p");
+
+        assertTrue(base.matches(p));
+        assertFalse(dated.matches(p));
+        assertFalse(base.withCaptionContaining("x").matches(p));
+        assertTrue(base.matches(p));
+    }
+
+    @Test
+    public void nullCaptionIsStoredAsEmpty() {
+        Photo p = new Photo("/photos/x.jpg", null, 0L, new ArrayList<>());
+        assertEquals("", p.getCaption());
+        assertFalse(PhotoQuery.allOf().withCaptionContaining("x").matches(p));
+
+        p.setCaption(null);
+        assertEquals("", p.getCaption());
+    }
+}
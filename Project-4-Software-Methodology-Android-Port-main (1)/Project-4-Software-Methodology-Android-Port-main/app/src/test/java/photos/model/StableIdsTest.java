@@ -0,0 +1,34 @@
+package photos.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Tests for {@link StableIds}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class StableIdsTest {
+
+    @Test
+    public void matchesFnv1aReferenceValues() {
+        assertEquals(0xcbf29ce484222325L, StableIds.of(""));
+        assertEquals(0xaf63dc4c8601ec8cL, StableIds.of("a"));
+        assertEquals(0x85944171f73967e8L, StableIds.of("foobar"));
+    }
+
+    @Test
+    public void sameKeyGivesSameId() {
+        String path = "/storage/emulated/0/DCIM/IMG_0001.jpg";
+        assertEquals(StableIds.of(path), StableIds.of(new String(path.toCharArray())));
+    }
+
+    @Test
+    public void differentKeysGiveDifferentIds() {
+        assertNotEquals(StableIds.of("IMG_0001.jpg"), StableIds.of("IMG_0002.jpg"));
+        assertNotEquals(StableIds.of("ab"), StableIds.of("ba"));
+    }
+}
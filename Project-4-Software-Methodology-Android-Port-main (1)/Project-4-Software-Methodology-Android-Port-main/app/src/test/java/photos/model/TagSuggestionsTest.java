@@ -0,0 +1,153 @@
+package photos.model;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Tests for {@link TagSuggestions}.
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class TagSuggestionsTest {
+
+    private TagSuggestions suggestions;
+    private Album album;
+    private int nextPhoto;
+
+    @Before
+    public void setUp() {
+        suggestions = new TagSuggestions();
+        LibraryEvents.addListener(suggestions);
+        album = new Album("all");
+    }
+
+    @After
+    public void tearDown() {
+        LibraryEvents.removeListener(suggestions);
+    }
+
+    private Photo photo(String path) {
+        return new Photo(path, "", 0L, new ArrayList<>());
+    }
+
+    /** Adds photos tagged with a person value to the album. */
+    private List<Photo> tagged(String value, int photos) {
+        List<Photo> result = new ArrayList<>();
+        for (int i = 0; i < photos; i++) {
+            Photo p = photo("/photos/" + nextPhoto++ + ".jpg");
+            album.addPhoto(p);
+            p.addTag(new Tag("person", value));
+            result.add(p);
+        }
+        return result;
+    }
+
+    @Test
+    public void ranksByUsageThenValue() {
+        tagged("Bob", 1);
+        tagged("Anna", 3);
+        tagged("Alice", 2);
+        tagged("Aaron", 2);
+
+        assertEquals(Arrays.asList("Anna", "Aaron", "Alice", "Bob"),
+                suggestions.suggest("person", "", 8));
+        assertEquals(Arrays.asList("Anna", "Aaron", "Alice"), suggestions.suggest("person", "a", 8));
+        assertEquals(Arrays.asList("Anna"), suggestions.suggest("person", "a", 1));
+        assertEquals(Collections.emptyList(), suggestions.suggest("location", "a", 8));
+    }
+
+    @Test
+    public void valueOutsideFullCacheReplacesTheLast() {
+        for (int i = 0; i < TagSuggestions.TOP_K; i++) {
+            tagged("v" + i, 2);
+        }
+        tagged("late", 1);
+        assertEquals(TagSuggestions.TOP_K, suggestions.suggest("person", "", 8).size());
+        assertFalse(suggestions.suggest("person", "", 8).contains("late"));
+
+        tagged("late", 2);
+
+        List<String> top = suggestions.suggest("person", "", 8);
+        assertEquals("late", top.get(0));
+        assertEquals(TagSuggestions.TOP_K, top.size());
+        assertFalse(top.contains("v7"));
+    }
+
+    @Test
+    public void decrementBelowFullCacheBringsBackTheNextValue() {
+        List<Photo> first = tagged("first", 3);
+        for (int i = 1; i < TagSuggestions.TOP_K; i++) {
+            tagged("v" + i, 2);
+        }
+        tagged("spare", 1);
+
+        // "first" drops below "spare", which was outside the cache
+        for (Photo p : first) album.removePhoto(p);
+
+        List<String> top = suggestions.suggest("person", "", 8);
+        assertEquals(TagSuggestions.TOP_K, top.size());
+        assertEquals("spare", top.get(TagSuggestions.TOP_K - 1));
+        assertEquals(0, suggestions.getUsageCount(new Tag("person", "first")));
+    }
+
+    @Test
+    public void lookupIgnoresCaseAndKeepsFirstSpelling() {
+        tagged("McKay", 1);
+        tagged("mckay", 1);
+
+        assertEquals(Arrays.asList("McKay"), suggestions.suggest("person", "MC", 8));
+        assertEquals(2, suggestions.getUsageCount(new Tag("person", "MCKAY")));
+    }
+
+    @Test
+    public void removingAnAlbumForgetsItsTags() {
+        tagged("Alice", 2);
+        Album other = new Album("other");
+        Photo p = photo("/photos/other.jpg");
+        other.addPhoto(p);
+        p.addTag(new Tag("person", "Alice"));
+        assertEquals(3, suggestions.getUsageCount(new Tag("person", "Alice")));
+
+        LibraryEvents.albumRemoved(other);
+
+        assertEquals(2, suggestions.getUsageCount(new Tag("person", "Alice")));
+    }
+
+    @Test
+    public void separateCopiesOfOneFileAreCountedByObject() {
+        Album a = new Album("a");
+        Album b = new Album("b");
+        Photo inA = photo("/p.jpg");
+        Photo inB = photo("/p.jpg");
+        a.addPhoto(inA);
+        b.addPhoto(inB);
+        inA.addTag(new Tag("person", "Alice"));
+
+        // Removing through an equal copy still reports the album's own object
+        a.removePhoto(inB);
+        b.removePhoto(inB);
+
+        assertEquals(0, suggestions.getUsageCount(new Tag("person", "Alice")));
+        assertEquals(Collections.emptyList(), suggestions.suggest("person", "a", 8));
+    }
+
+    @Test
+    public void tagsOfPhotosOutsideTheLibraryAreNotCounted() {
+        Photo loose = photo("/loose.jpg");
+        loose.addTag(new Tag("person", "Alice"));
+        assertEquals(0, suggestions.getUsageCount(new Tag("person", "Alice")));
+
+        album.addPhoto(loose);
+        assertEquals(1, suggestions.getUsageCount(new Tag("person", "Alice")));
+    }
+}
@@ -0,0 +1,146 @@
+package photos.tools;
+
+import photos.model.Album;
+import photos.model.LibraryColumns;
+import photos.model.Photo;
+import photos.model.Tag;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Compares aggregate queries over {@link LibraryColumns} with the same
+ * queries answered by walking the album object graph.
+ *
+ * <p>Both sides compute the same integer month key and format only the
+ * distinct months, so the comparison measures the data layout rather than
+ * string formatting. Writing and reading the columnar file are timed
+ * against building the columns from the albums.</p>
+ *
+ * <p>Runs on a plain JVM with the unit test classpath, off-device:</p>
+ * <pre>
+ * java photos.tools.ColumnarBenchmark [albums] [photosPerAlbum]
+ * </pre>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class ColumnarBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private ColumnarBenchmark() {}
+
+    public static void main(String[] args) throws IOException {
+        int albumCount = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        int photosPerAlbum = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        List<Album> albums = new LibraryGenerator()
+                .withAlbums(albumCount)
+                .withPhotosPerAlbum(photosPerAlbum)
+                .generate();
+
+        long start = System.nanoTime();
+        LibraryColumns columns = LibraryColumns.build(albums);
+        System.out.printf("build: %d photos in %.2f ms%n",
+                columns.getPhotoCount(), (System.nanoTime() - start) / 1e6);
+
+        File file = File.createTempFile("library_columns", ".dat");
+        try {
+            start = System.nanoTime();
+            columns.write(file);
+            double writeMs = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            LibraryColumns.read(file);
+            System.out.printf("file: %d KB, write %.2f ms, read %.2f ms%n",
+                    file.length() / 1024, writeMs, (System.nanoTime() - start) / 1e6);
+        } finally {
+            file.delete();
+        }
+
+        run("photos per person", () -> graphCountByTag(albums, "person"),
+                () -> columns.countByTagValue("person"));
+        run("photos per month", () -> graphCountByMonth(albums),
+                columns::countByMonth);
+        run("largest albums", () -> graphLargestAlbums(albums, 10),
+                () -> columns.largestAlbums(10));
+        run("untagged photos", () -> graphUntagged(albums),
+                columns::untaggedPhotos);
+    }
+
+    private static void run(String name, Runnable graph, Runnable columnar) {
+        double graphMs = time(graph);
+        double columnarMs = time(columnar);
+        System.out.printf("%-18s graph %8.3f ms  columnar %8.3f ms  (%.1fx)%n",
+                name, graphMs, columnarMs, graphMs / Math.max(columnarMs, 1e-6));
+    }
+
+    private static double time(Runnable task) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) task.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < MEASURED_ROUNDS; i++) task.run();
+        return (System.nanoTime() - start) / 1e6 / MEASURED_ROUNDS;
+    }
+
+    private static Map<String, Integer> graphCountByTag(List<Album> albums, String tagName) {
+        Map<String, Set<String>> photosPerValue = new HashMap<>();
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                for (Tag t : p.getTags()) {
+                    if (t.getName().equals(tagName)) {
+                        photosPerValue.computeIfAbsent(t.getValue(), k -> new HashSet<>())
+                                .add(p.getFilePath());
+                    }
+                }
+            }
+        }
+        Map<String, Integer> result = new HashMap<>();
+        photosPerValue.forEach((k, v) -> result.put(k, v.size()));
+        return result;
+    }
+
+    private static Map<String, Integer> graphCountByMonth(List<Album> albums) {
+        Set<String> seen = new HashSet<>();
+        Map<Integer, Integer> perMonth = new TreeMap<>();
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                if (!seen.add(p.getFilePath())) continue;
+                Calendar d = p.getDate();
+                perMonth.merge(d.get(Calendar.YEAR) * 12 + d.get(Calendar.MONTH), 1, Integer::sum);
+            }
+        }
+
+        Map<String, Integer> result = new TreeMap<>();
+        perMonth.forEach((month, count) -> result.put(
+                String.format("%04d-%02d", month / 12, month % 12 + 1), count));
+        return result;
+    }
+
+    private static List<Album> graphLargestAlbums(List<Album> albums, int limit) {
+        List<Album> sorted = new ArrayList<>(albums);
+        sorted.sort((x, y) -> Integer.compare(y.getPhotoCount(), x.getPhotoCount()));
+        return sorted.subList(0, Math.min(limit, sorted.size()));
+    }
+
+    private static List<String> graphUntagged(List<Album> albums) {
+        Set<String> seen = new HashSet<>();
+        List<String> result = new ArrayList<>();
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                if (seen.add(p.getFilePath()) && p.getTags().isEmpty()) {
+                    result.add(p.getFilePath());
+                }
+            }
+        }
+        return result;
+    }
+}
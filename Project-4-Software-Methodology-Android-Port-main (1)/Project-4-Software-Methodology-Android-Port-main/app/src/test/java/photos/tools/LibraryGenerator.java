@@ -0,0 +1,187 @@
+package photos.tools;
+
+import photos.model.Album;
+import photos.model.Photo;
+import photos.model.Tag;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Builds synthetic photo libraries of any size for benchmarks and load
+ * tests.
+ *
+ * <p>The same settings and seed always produce the same library. Tag
+ * values are skewed so that a few values are very common and most are
+ * rare, as with real people and places. With overlap set, part of each
+ * album is made of photos already in earlier albums, the way copied
+ * photos are shared between albums in the app.</p>
+ *
+ * <pre>
+ * List&lt;Album&gt; albums = new LibraryGenerator()
+ *         .withAlbums(100)
+ *         .withPhotosPerAlbum(1000)
+ *         .withOverlap(0.2)
+ *         .generate();
+ * </pre>
+ *
+ * <p>Photo paths point to files that do not exist.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public class LibraryGenerator {
+
+    private static final String[] TAG_NAMES = {"person", "location"};
+
+    private static final String[] WORDS = {
+        "beach", "sunset", "birthday", "party", "hike", "lake", "family",
+        "dinner", "snow", "city", "trip", "garden", "dog", "concert",
+        "morning", "bridge", "market", "wedding", "road", "forest"
+    };
+
+    /** Earliest generated photo date, in epoch milliseconds. */
+    private static final long FIRST_DATE_MILLIS = 1_500_000_000_000L;
+
+    /** Span of generated photo dates, in seconds; about six years. */
+    private static final int DATE_SPAN_SECONDS = 200_000_000;
+
+    private long seed = 42;
+    private int albumCount = 10;
+    private int photosPerAlbum = 100;
+    private int maxTagsPerPhoto = 3;
+    private int valueCardinality = 500;
+    private int minCaptionWords = 0;
+    private int maxCaptionWords = 6;
+    private double overlap = 0;
+
+    public LibraryGenerator withSeed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public LibraryGenerator withAlbums(int albumCount) {
+        this.albumCount = albumCount;
+        return this;
+    }
+
+    public LibraryGenerator withPhotosPerAlbum(int photosPerAlbum) {
+        this.photosPerAlbum = photosPerAlbum;
+        return this;
+    }
+
+    /**
+     * Sets the largest number of tags on a photo; each photo gets between
+     * none and this many.
+     *
+     * @param maxTagsPerPhoto the maximum tag count
+     * @return this generator
+     */
+    public LibraryGenerator withTagsPerPhoto(int maxTagsPerPhoto) {
+        this.maxTagsPerPhoto = maxTagsPerPhoto;
+        return this;
+    }
+
+    /**
+     * Sets the number of distinct values of each tag type.
+     *
+     * @param valueCardinality the distinct value count
+     * @return this generator
+     */
+    public LibraryGenerator withValueCardinality(int valueCardinality) {
+        this.valueCardinality = valueCardinality;
+        return this;
+    }
+
+    /**
+     * Sets the caption length range in words; 0 words is an empty caption.
+     *
+     * @param minWords the shortest caption
+     * @param maxWords the longest caption
+     * @return this generator
+     */
+    public LibraryGenerator withCaptionWords(int minWords, int maxWords) {
+        this.minCaptionWords = minWords;
+        this.maxCaptionWords = maxWords;
+        return this;
+    }
+
+    /**
+     * Sets the fraction of each album, after the first, made of photos
+     * already in earlier albums.
+     *
+     * @param overlap a fraction from 0 to 1
+     * @return this generator
+     */
+    public LibraryGenerator withOverlap(double overlap) {
+        this.overlap = overlap;
+        return this;
+    }
+
+    /**
+     * Generates the library.
+     *
+     * @return the albums, named album0, album1, ...
+     */
+    public List<Album> generate() {
+        Random random = new Random(seed);
+        List<Album> albums = new ArrayList<>(albumCount);
+        List<Photo> generated = new ArrayList<>();
+
+        for (int a = 0; a < albumCount; a++) {
+            Album album = new Album("album" + a);
+            for (int i = 0; i < photosPerAlbum; i++) {
+                if (!generated.isEmpty() && random.nextDouble() < overlap) {
+                    // Already in the album if drawn twice; it then stays one short
+                    album.addPhoto(generated.get(random.nextInt(generated.size())));
+                } else {
+                    Photo p = newPhoto(random, "/synthetic/" + a + "/" + i + ".jpg");
+                    generated.add(p);
+                    album.addPhoto(p);
+                }
+            }
+            albums.add(album);
+        }
+        return albums;
+    }
+
+    /**
+     * Creates one photo with random date, tags and caption.
+     *
+     * @param random the source of randomness
+     * @param filePath the photo's path
+     * @return the photo
+     */
+    Photo newPhoto(Random random, String filePath) {
+        Photo p = new Photo(filePath);
+        p.getDate().setTimeInMillis(FIRST_DATE_MILLIS + random.nextInt(DATE_SPAN_SECONDS) * 1000L);
+
+        int tags = random.nextInt(maxTagsPerPhoto + 1);
+        for (int t = 0; t < tags; t++) {
+            p.addTag(randomTag(random));
+        }
+
+        int words = minCaptionWords + random.nextInt(maxCaptionWords - minCaptionWords + 1);
+        StringBuilder caption = new StringBuilder();
+        for (int w = 0; w < words; w++) {
+            if (w > 0) caption.append(' ');
+            caption.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        p.setCaption(caption.toString());
+        return p;
+    }
+
+    /**
+     * Picks a tag with a skewed value: squaring a uniform draw makes
+     * low-numbered values far more common than high-numbered ones.
+     *
+     * @param random the source of randomness
+     * @return the tag
+     */
+    Tag randomTag(Random random) {
+        String name = TAG_NAMES[random.nextInt(TAG_NAMES.length)];
+        double u = random.nextDouble();
+        return new Tag(name, name + (int) (u * u * valueCardinality));
+    }
+}
@@ -0,0 +1,135 @@
+package photos.tools;
+
+import photos.metrics.LatencyHistogram;
+import photos.model.Album;
+import photos.model.DataManager;
+import photos.model.Photo;
+import photos.model.PhotoQuery;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Drives the model and persistence APIs with a synthetic library and
+ * reports throughput, latency percentiles and heap use per scenario.
+ *
+ * <p>Runs on a plain JVM with the unit test classpath, off-device, from
+ * an empty working directory; album files are written under
+ * {@code data/albums} there and deleted at the end:</p>
+ * <pre>
+ * java photos.tools.LoadTest [albums] [photosPerAlbum] [operations]
+ * </pre>
+ *
+ * <p>Scenarios run in order against the same library: add every photo
+ * to its album, tag and caption random photos, search by tag, save every
+ * album, and reload the library from disk.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class LoadTest {
+
+    /** Number of full reloads measured. */
+    private static final int RELOAD_ROUNDS = 3;
+
+    /** Searches scan the whole library, so far fewer are run. */
+    private static final int SEARCHES_PER_OPERATION = 100;
+
+    /** One timed operation of a scenario. */
+    private interface Operation {
+        void run(int i);
+    }
+
+    private LoadTest() {}
+
+    public static void main(String[] args) {
+        int albumCount = args.length > 0 ? Integer.parseInt(args[0]) : 50;
+        int photosPerAlbum = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+        String[] existing = new File("data/albums").list();
+        if (existing != null && existing.length > 0) {
+            System.err.println("ERROR: run from an empty directory; data/albums is not empty");
+            System.exit(1);
+        }
+
+        LibraryGenerator generator = new LibraryGenerator()
+                .withAlbums(albumCount)
+                .withPhotosPerAlbum(photosPerAlbum)
+                .withValueCardinality(5000)
+                .withOverlap(0.2);
+
+        // Generated before the library exists, so its listeners see no events
+        List<Album> source = generator.generate();
+        Set<Photo> distinct = new LinkedHashSet<>();
+        for (Album a : source) distinct.addAll(a.getPhotos());
+        List<Photo> photos = new ArrayList<>(distinct);
+        System.out.printf("library: %d albums, %d photos, %d distinct%n",
+                albumCount, albumCount * photosPerAlbum, photos.size());
+
+        DataManager dm = DataManager.getInstance();
+        dm.awaitLoaded();
+        Random random = new Random(7);
+
+        List<Album> albums = new ArrayList<>();
+        List<Photo> toAdd = new ArrayList<>();
+        List<Album> addTo = new ArrayList<>();
+        for (Album a : source) {
+            Album album = new Album(a.getName());
+            dm.addAlbum(album);
+            albums.add(album);
+            for (Photo p : a.getPhotos()) {
+                toAdd.add(p);
+                addTo.add(album);
+            }
+        }
+
+        System.out.printf("%-8s %8s %10s %10s %9s %9s %9s %9s %9s%n",
+                "scenario", "ops", "total ms", "ops/s", "p50 us", "p95 us", "p99 us", "max us", "heap MB");
+
+        scenario("add", toAdd.size(), i -> addTo.get(i).addPhoto(toAdd.get(i)));
+        scenario("tag", operations,
+                i -> photos.get(random.nextInt(photos.size())).addTag(generator.randomTag(random)));
+        scenario("caption", operations,
+                i -> photos.get(random.nextInt(photos.size())).setCaption("load test " + i));
+        scenario("search", Math.max(1, operations / SEARCHES_PER_OPERATION),
+                i -> dm.search(PhotoQuery.anyOf(generator.randomTag(random))));
+        scenario("save", albums.size(), i -> dm.saveAlbum(albums.get(i)));
+        scenario("reload", RELOAD_ROUNDS, i -> dm.reloadAsync(null).join());
+
+        for (Album a : dm.getAlbums()) {
+            dm.deleteAlbum(a);
+        }
+    }
+
+    private static void scenario(String name, int ops, Operation operation) {
+        LatencyHistogram latency = new LatencyHistogram("loadtest." + name);
+        long start = System.nanoTime();
+        for (int i = 0; i < ops; i++) {
+            long opStart = System.nanoTime();
+            operation.run(i);
+            latency.recordSince(opStart);
+        }
+        double totalMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("%-8s %8d %10.1f %10.0f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                name, ops, totalMs, ops / (totalMs / 1000),
+                micros(latency.getPercentile(50)), micros(latency.getPercentile(95)),
+                micros(latency.getPercentile(99)), micros(latency.getMax()), usedHeapMb());
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+
+    /** Heap in use after a collection, so it reflects live objects. */
+    private static double usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024.0 * 1024.0);
+    }
+}
@@ -0,0 +1,111 @@
+package photos.tools;
+
+import photos.model.Album;
+import photos.model.Photo;
+import photos.model.PhotoTable;
+import photos.model.Tag;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Compares the heap and garbage collection cost of a library held as
+ * {@link Photo} objects with the same library held in a
+ * {@link PhotoTable}.
+ *
+ * <p>Runs on a plain JVM with the unit test classpath, off-device:</p>
+ * <pre>
+ * java photos.tools.PhotoTableBenchmark [albums] [photosPerAlbum]
+ * </pre>
+ *
+ * <p>Full collection time is measured because it grows with the number of
+ * live objects, which is what the table removes.</p>
+ *
+ * @author Jess
+ * @author Pavel
+ */
+public final class PhotoTableBenchmark {
+
+    private static final int GC_ROUNDS = 3;
+    private static final int SCAN_ROUNDS = 10;
+
+    /** Keeps the measured structure reachable during collections. */
+    private static Object resident;
+
+    private PhotoTableBenchmark() {}
+
+    public static void main(String[] args) {
+        int albumCount = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int photosPerAlbum = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        double baseline = usedHeapMb();
+        List<Album> albums = new LibraryGenerator()
+                .withAlbums(albumCount)
+                .withPhotosPerAlbum(photosPerAlbum)
+                .withCaptionWords(0, 8)
+                .generate();
+        resident = albums;
+        Tag probe = new Tag("person", "person1");
+
+        double objectHeap = usedHeapMb() - baseline;
+        double objectGc = fullGcMs();
+        double objectScan = time(() -> countGraph(albums, probe));
+
+        PhotoTable table = PhotoTable.build(albums);
+        int rows = table.size();
+        resident = table;
+        albums.clear();
+
+        double tableHeap = usedHeapMb() - baseline;
+        double tableGc = fullGcMs();
+        double tableScan = time(() -> countTable(table, probe));
+
+        System.out.printf("%d photos (%.1f MB off-heap in the table)%n",
+                rows, table.getOffHeapBytes() / (1024.0 * 1024.0));
+        System.out.printf("%-8s %10s %12s %12s%n", "", "heap MB", "full gc ms", "tag scan ms");
+        System.out.printf("%-8s %10.1f %12.1f %12.2f%n", "objects", objectHeap, objectGc, objectScan);
+        System.out.printf("%-8s %10.1f %12.1f %12.2f%n", "table", tableHeap, tableGc, tableScan);
+        System.out.println(countTable(table, probe) + " photos tagged " + probe);
+    }
+
+    private static int countGraph(List<Album> albums, Tag tag) {
+        Set<String> seen = new HashSet<>();
+        int count = 0;
+        for (Album a : albums) {
+            for (Photo p : a.getPhotos()) {
+                if (seen.add(p.getFilePath()) && p.hasTag(tag)) count++;
+            }
+        }
+        return count;
+    }
+
+    private static int countTable(PhotoTable table, Tag tag) {
+        PhotoTable.Row row = table.row();
+        int count = 0;
+        for (int i = 0; i < table.size(); i++) {
+            if (row.moveTo(i).hasTag(tag)) count++;
+        }
+        return count;
+    }
+
+    private static double time(Runnable task) {
+        task.run();
+        long start = System.nanoTime();
+        for (int i = 0; i < SCAN_ROUNDS; i++) task.run();
+        return (System.nanoTime() - start) / 1e6 / SCAN_ROUNDS;
+    }
+
+    private static double fullGcMs() {
+        long start = System.nanoTime();
+        for (int i = 0; i < GC_ROUNDS; i++) System.gc();
+        return (System.nanoTime() - start) / 1e6 / GC_ROUNDS;
+    }
+
+    /** Heap in use after a collection, so it reflects live objects. */
+    private static double usedHeapMb() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return (runtime.totalMemory() - runtime.freeMemory()) / (1024.0 * 1024.0);
+    }
+}